@@ -58,9 +58,30 @@ public class Agent {
 	}
 	
 	
+	/**
+	 * Loads the agent's policy from the file named after its class, e.g. {@code ValueIterationAgent.pol}, directly
+	 * under the project folder, if there is one.
+	 * @return the policy loaded, or null if there is no such file
+	 */
 	public Policy loadPolicyFromFile()
 	{
-		return null;
+		String file=getClass().getSimpleName()+".pol";
+		if (!new java.io.File(file).exists())
+			return null;
+		
+		return loadPolicyFromFile(file);
+	}
+	
+	/**
+	 * Loads the agent's policy from {@code file}, which is in the format of {@link PolicyFile}, and sets it as
+	 * the agent's policy.
+	 * @param file
+	 * @return the policy loaded
+	 */
+	public Policy loadPolicyFromFile(String file)
+	{
+		this.policy=new Policy(file);
+		return policy;
 	}
 	
 	
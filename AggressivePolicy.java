@@ -1,43 +1,61 @@
 package ticTacToe;
 
 
-import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 /**
  * An agrgessive policy: if there is a winning move given a game state (Game object) then this policy finds it. Otherwise returns a
  * random available move.
+ * 
+ * Winning moves are looked up in {@link BitBoard#threats}, so a move costs a few table lookups: no game is cloned or simulated.
+ * Of several winning moves, the one in the lowest cell is played.
  *  
  * @author ae187
  *
  */
 public class AggressivePolicy extends Policy {
 	
+	SplittableRandom r;
 	
-	public Move getMove(Game g) {
-		
-		
-		List<Move> moves=g.getPossibleMoves();
-		
-		for(Move m:moves)
-		{
-			
-			Game resulting=null;
-			try{
-				resulting=g.simulateMove(m);
-			}
-			catch(IllegalMoveException e)
-			{
-				System.out.println(e.getMessage());
-				e.printStackTrace();
-			}
-			if (resulting.getState()==Game.X_WON||resulting.getState()==Game.O_WON)
-				return m;
-		}
+	public AggressivePolicy()
+	{
+		this(Rng.split());
+	}
+	
+	public AggressivePolicy(SplittableRandom r)
+	{
+		this.r=r;
+	}
+	
+	/**
+	 * 
+	 * @param mine the cells of the player to move
+	 * @param theirs the cells of the other player
+	 * @return a winning cell if there is one, else a random free cell
+	 */
+	int selectCell(int mine, int theirs)
+	{
+		int free=BitBoard.FULL & ~(mine|theirs);
+		int wins=BitBoard.threats(mine) & free;
+		if (wins!=0)
+			return Integer.numberOfTrailingZeros(wins);
 		
-		Random r=new Random();
+		return EpsilonGreedyPolicy.randomCell(free, r);
+	}
+	
+	public Move getMove(Game g) {
+		if (g.legalMoveMask()==0)
+			return null;
 		
-		return moves.get(r.nextInt(moves.size()));
+		char me=g.whoseTurn.getName();
+		int cell=selectCell(g.marks(me), g.marks(me=='X'?'O':'X'));
+		return new Move(g.whoseTurn, cell/3, cell%3);
+	}
+	
+	public int getCell(Position p) {
+		if (p.legalMoves()==0)
+			return -1;
 		
+		return p.isXToMove() ? selectCell(p.xMask(), p.oMask()) : selectCell(p.oMask(), p.xMask());
 	}
 
 }
@@ -0,0 +1,255 @@
+package ticTacToe;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that the hot paths allocate no more than they are allowed to: a move,
+ * a policy lookup, a Bellman backup, a Q-learning episode and so on. Each path
+ * has a budget in bytes per operation, measured with the thread's allocation
+ * counter (see {@link Metrics#allocatedBytes()}) after the path has been
+ * warmed up, so that allocations the JIT removes are not counted.
+ *
+ * Paths that are meant to be allocation-free have a budget of 0; a path over
+ * budget fails the check, and the program exits with status 1, so it can be
+ * run after every change, e.g.
+ * {@code java ticTacToe.AllocationBudgets || echo over budget}. The budgets of
+ * paths that still allocate are what they allocate now, so that they can only
+ * go down.
+ *
+ * Usage: {@code AllocationBudgets [-only <regex>]}
+ *
+ */
+public class AllocationBudgets {
+
+	/**
+	 * the number of times a path is run to warm it up, and then to measure it
+	 */
+	static final int WARMUP = 200_000;
+	static final int REPS = 1_000_000;
+
+	/**
+	 * the measurement itself may be charged for a few bytes in all, so less than
+	 * this per operation counts as nothing
+	 */
+	static final double NOISE = 0.01;
+
+	final List<String> names = new ArrayList<String>();
+	final List<Long> budgets = new ArrayList<Long>();
+	final List<Benchmarks.Op> ops = new ArrayList<Benchmarks.Op>();
+
+	/**
+	 *
+	 * @param name   the path
+	 * @param budget the most bytes it may allocate per operation
+	 * @param op     runs the path
+	 */
+	void add(String name, long budget, Benchmarks.Op op) {
+		names.add(name);
+		budgets.add(budget);
+		ops.add(op);
+	}
+
+	/**
+	 *
+	 * @return the bytes allocated per operation by {@code op}, once warm
+	 */
+	static double measure(Benchmarks.Op op) throws Exception {
+		for (int i = 0; i < 5; i++)
+			Benchmarks.sink += op.run(WARMUP);
+
+		long before = Metrics.allocatedBytes();
+		Benchmarks.sink += op.run(REPS);
+		long after = Metrics.allocatedBytes();
+		return (double) (after - before) / REPS;
+	}
+
+	/**
+	 * Adds the standard paths.
+	 */
+	void addAll() throws IOException {
+		StateSpace space = StateSpace.get();
+		List<Position> list = new ArrayList<Position>();
+		for (int id = 0; id < space.size(); id++)
+			if (space.position(id).isXToMove() && !space.isTerminal(id))
+				list.add(space.position(id));
+		Position[] positions = list.toArray(new Position[0]);
+		int n = positions.length;
+		Game[] games = new Game[n];
+		Move[] moves = new Move[n];
+		int[] cells = new int[n];
+		int[] hashes = new int[n];
+		SplittableRandom random = new SplittableRandom(42);
+		for (int i = 0; i < n; i++) {
+			games[i] = positions[i].toGame();
+			hashes[i] = positions[i].hash();
+			cells[i] = EpsilonGreedyPolicy.randomCell(positions[i].legalMoves(), random);
+			moves[i] = new Move(games[i].whoseTurn, cells[i] / 3, cells[i] % 3);
+		}
+
+		Policy trained = new ValueIterationAgent(0.9).getPolicy();
+		Path file = Files.createTempFile("budget", ".pol");
+		file.toFile().deleteOnExit();
+		trained.writeToFile(file);
+		Policy mapped = new Policy(file.toString());
+		PolicyServer server = new PolicyServer(new MirroredPolicy(mapped));
+
+		add("Position.play", 0, reps -> {
+			long sum = 0;
+			int k = 0;
+			for (long i = 0; i < reps; i++, k = k + 1 == n ? 0 : k + 1)
+				sum += positions[k].play(cells[k]).hash();
+			return sum;
+		});
+		add("Game.executeMove", 0, new Benchmarks.Op() {
+			Game g = new Game();
+
+			public long run(long reps) throws Exception {
+				long sum = 0;
+				for (long i = 0; i < reps; i++) {
+					g.reset(g.x);
+					g.executeMove(moves[0]);
+					sum += g.state;
+				}
+				return sum;
+			}
+		});
+		add("Game.hashCode", 0, reps -> {
+			long sum = 0;
+			int k = 0;
+			for (long i = 0; i < reps; i++, k = k + 1 == n ? 0 : k + 1)
+				sum += games[k].hashCode();
+			return sum;
+		});
+		add("Policy.getCell (mapped)", 0, reps -> {
+			long sum = 0;
+			int k = 0;
+			for (long i = 0; i < reps; i++, k = k + 1 == n ? 0 : k + 1)
+				sum += mapped.getCell(positions[k]);
+			return sum;
+		});
+		add("RulePolicy.getCell", 0, new Benchmarks.Op() {
+			RulePolicy rules = new RulePolicy();
+
+			public long run(long reps) {
+				long sum = 0;
+				int k = 0;
+				for (long i = 0; i < reps; i++, k = k + 1 == n ? 0 : k + 1)
+					sum += rules.getCell(positions[k]);
+				return sum;
+			}
+		});
+		add("PolicyServer.getMove", 0, reps -> {
+			long sum = 0;
+			int k = 0;
+			for (long i = 0; i < reps; i++, k = k + 1 == n ? 0 : k + 1)
+				sum += server.getMove(hashes[k]);
+			return sum;
+		});
+		add("PolicyServer.getMoves", 0, new Benchmarks.Op() {
+			byte[] out = new byte[n];
+
+			public long run(long reps) {
+				long sum = 0;
+				for (long done = 0; done < reps; done += n) {
+					int batch = (int) Math.min(n, reps - done);
+					server.getMoves(hashes, 0, batch, out, 0);
+					sum += out[batch - 1];
+				}
+				return sum;
+			}
+		});
+		add("QLearningAgent.runEpisode", 800, new Benchmarks.Op() {
+			// whole episodes through the learner's own update, per episode
+			QLearningAgent agent = new QLearningAgent(new RandomAgent(new SplittableRandom(7)), 0.1, 0.9, null,
+					new SplittableRandom(7));
+			EpsilonGreedyPolicy explorer = new EpsilonGreedyPolicy(agent.qTable, agent.getEpsilonSchedule(),
+					agent.random);
+
+			public long run(long reps) {
+				for (long i = 0; i < reps; i++) {
+					agent.env.reset();
+					agent.runEpisode(explorer);
+				}
+				return agent.env.getCurrentGameState().getState();
+			}
+		});
+		add("Bellman backup", 720, new Benchmarks.Op() {
+			TTTMDP mdp = new TTTMDP();
+
+			public long run(long reps) {
+				double sum = 0;
+				int k = 0;
+				for (long i = 0; i < reps; i++, k = k + 1 == n ? 0 : k + 1)
+					for (TransitionProb t : mdp.generateTransitions(games[k], moves[k]))
+						sum += t.prob * t.outcome.localReward;
+				return Double.doubleToLongBits(sum);
+			}
+		});
+		add("TTTEnvironment.executeMove", 256, new Benchmarks.Op() {
+			TTTEnvironment env = new TTTEnvironment(new RandomAgent());
+			SplittableRandom r = new SplittableRandom(7);
+
+			public long run(long reps) throws Exception {
+				long sum = 0;
+				for (long i = 0; i < reps; i++) {
+					if (env.isTerminal())
+						env.reset();
+					Game g = env.getCurrentGameState();
+					int cell = EpsilonGreedyPolicy.randomCell(g.legalMoveMask(), r);
+					sum += (long) env.executeMove(new Move(g.whoseTurn, cell / 3, cell % 3)).localReward;
+				}
+				return sum;
+			}
+		});
+	}
+
+	public static void main(String[] args) throws Exception {
+		Pattern only = null;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "-only":
+				only = Pattern.compile(args[i + 1]);
+				break;
+			default:
+				System.out.println("Unknown option " + args[i]);
+				return;
+			}
+		}
+
+		if (Metrics.allocatedBytes() < 0) {
+			System.out.println("This JVM does not count allocated bytes per thread: nothing can be checked");
+			System.exit(2);
+		}
+		// the paths, not the counters, are checked
+		Metrics.setEnabled(false);
+
+		AllocationBudgets checks = new AllocationBudgets();
+		checks.addAll();
+		int failed = 0;
+		for (int i = 0; i < checks.names.size(); i++) {
+			String name = checks.names.get(i);
+			if (only != null && !only.matcher(name).find())
+				continue;
+
+			long budget = checks.budgets.get(i);
+			double bytes = measure(checks.ops.get(i));
+			boolean ok = bytes <= budget + NOISE;
+			if (!ok)
+				failed++;
+			System.out.println(String.format("%-28s %10.2f B/op  budget %6d  %s", name, bytes, budget,
+					ok ? "ok" : "OVER BUDGET"));
+		}
+
+		if (failed > 0) {
+			System.out.println(failed + " path(s) over budget");
+			System.exit(1);
+		}
+	}
+
+}
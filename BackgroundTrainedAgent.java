@@ -0,0 +1,174 @@
+package ticTacToe;
+
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * An agent that is ready to play immediately, while its real policy trains on
+ * a background thread.
+ *
+ * Until training has finished the agent plays a cheap fallback policy. The
+ * trained policy is then published with a single atomic reference swap, so a
+ * move is always chosen by one complete policy, never by one that is half
+ * built, and the game thread never waits for training. The trained policy is
+ * also registered in the {@link ModelRegistry} and stored in the
+ * {@link PolicyCache}, and if it was registered or cached already no training
+ * happens at all.
+ *
+ */
+public class BackgroundTrainedAgent extends Agent {
+
+	/**
+	 * the policy moves are taken from: the fallback, then the trained policy
+	 */
+	private final AtomicReference<Policy> current;
+
+	private final Policy fallback;
+
+	/**
+	 * counted down once training has finished, or failed
+	 */
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	/**
+	 * Plays {@code fallback} until {@code train} returns, unless a policy is
+	 * cached in {@code cacheFile} already.
+	 * 
+	 * @param fallback  the policy played while training
+	 * @param cacheFile the {@link PolicyCache} file of the trained policy
+	 * @param train     trains and returns the policy; runs on a background thread
+	 */
+	public BackgroundTrainedAgent(Policy fallback, Path cacheFile, Supplier<Policy> train) {
+		this(fallback, cacheFile, train, false);
+	}
+
+	/**
+	 * As above, but if {@code mirrored} the trained policy is played through a
+	 * {@link MirroredPolicy}, so that a policy trained to play X can play O. The
+	 * policy registered and cached is the one trained, not the mirror.
+	 * 
+	 * @param mirrored whether to mirror the trained policy
+	 */
+	public BackgroundTrainedAgent(Policy fallback, Path cacheFile, Supplier<Policy> train, boolean mirrored) {
+		this.fallback = fallback;
+		Policy cached = ModelRegistry.getIfPresent(cacheFile);
+		if (cached == null)
+			cached = PolicyCache.load(cacheFile);
+		if (cached != null && mirrored)
+			cached = new MirroredPolicy(cached);
+		this.current = new AtomicReference<>(cached == null ? fallback : cached);
+		if (cached != null) {
+			done.countDown();
+			return;
+		}
+
+		Thread trainer = new Thread(() -> {
+			try {
+				Policy trained = train.get();
+				if (trained != null) {
+					// publish first, so the game switches over as soon as possible
+					current.set(mirrored ? new MirroredPolicy(trained) : trained);
+					ModelRegistry.put(cacheFile, trained);
+					PolicyCache.store(cacheFile, trained);
+				}
+			} catch (RuntimeException e) {
+				System.out.println("WARNING: background training failed, playing the fallback policy");
+				e.printStackTrace();
+			} finally {
+				done.countDown();
+			}
+		}, "background-training");
+		trainer.setDaemon(true);
+		trainer.start();
+	}
+
+	/**
+	 * A value iteration agent with the parameters of
+	 * {@link ValueIterationAgent#ValueIterationAgent()}, trained in the
+	 * background while an {@link AggressivePolicy} plays.
+	 * 
+	 * @param progress told how far training has got, or null
+	 * @return the agent
+	 */
+	public static BackgroundTrainedAgent valueIteration(TrainingProgress progress) {
+		TTTMDP defaults = new TTTMDP();
+		ValueIterationAgent vi = new ValueIterationAgent(0.9, defaults.winReward, defaults.loseReward,
+				defaults.livingReward, defaults.drawReward);
+		vi.setTrainingProgress(progress);
+		return new BackgroundTrainedAgent(new AggressivePolicy(), vi.cacheFile(), () -> {
+			vi.initValues();
+			vi.train();
+			return vi.getPolicy();
+		});
+	}
+
+	/**
+	 * A q-learning agent with the parameters of
+	 * {@link QLearningAgent#QLearningAgent()}, trained in the background while an
+	 * {@link AggressivePolicy} plays.
+	 * 
+	 * @param progress told how far training has got, or null
+	 * @return the agent
+	 */
+	public static BackgroundTrainedAgent qLearning(TrainingProgress progress) {
+		return qLearning(progress, false);
+	}
+
+	/**
+	 * As above, mirroring the trained policy if the agent plays O. The policy
+	 * is trained from both starters, so it can be mirrored.
+	 * 
+	 * @param progress told how far training has got, or null
+	 * @param mirrored true if the agent plays O
+	 * @return the agent
+	 */
+	public static BackgroundTrainedAgent qLearning(TrainingProgress progress, boolean mirrored) {
+		QLearningAgent ql = new QLearningAgent(new RandomAgent(), 0.1, 0.9, null, Rng.split());
+		ql.env.setBothStarters(true);
+		ql.setNumEpisodes(60000);
+		ql.setTrainingProgress(progress);
+		return new BackgroundTrainedAgent(new AggressivePolicy(), ql.cacheFile(), () -> {
+			ql.train();
+			return ql.getPolicy();
+		}, mirrored);
+	}
+
+	public Move getMove(Game g) {
+		return current.get().getMove(g);
+	}
+
+	/**
+	 * 
+	 * @return the policy currently played: the fallback until training has
+	 *         finished
+	 */
+	public Policy getPolicy() {
+		return current.get();
+	}
+
+	/**
+	 * 
+	 * @return true once the trained policy is being played
+	 */
+	public boolean isTrained() {
+		return current.get() != fallback;
+	}
+
+	/**
+	 * Waits for training to finish.
+	 * 
+	 * @param timeout
+	 * @param unit
+	 * @return true if the trained policy is being played, false if training
+	 *         failed or did not finish in time
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTrained(long timeout, TimeUnit unit) throws InterruptedException {
+		done.await(timeout, unit);
+		return isTrained();
+	}
+
+}
@@ -0,0 +1,357 @@
+package ticTacToe;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Micro and macro benchmarks of the core operations and of training, with the
+ * bytes allocated per operation, so that a change to these classes can be
+ * measured against a saved baseline.
+ *
+ * Each benchmark is an operation repeated in a loop. The number of repetitions
+ * is calibrated so that one measurement takes about {@code -time}
+ * milliseconds; after a number of warm-up measurements, the time per
+ * operation is averaged over {@code -iterations} measurements and given with
+ * its standard deviation. Allocation is read from the thread's allocation
+ * counter before and after every measurement, and garbage collections from
+ * the collector beans. Every operation folds its result into a checksum, so
+ * that the JIT cannot drop it.
+ *
+ * Usage:
+ * {@code Benchmarks [-only <regex>] [-iterations <n>] [-warmup <n>] [-time <ms>] [-save <file>] [-baseline <file>]}
+ *
+ * {@code -save} writes the results to a file; {@code -baseline} reads such a
+ * file and shows the change from it for every benchmark.
+ *
+ */
+public class Benchmarks {
+
+	/**
+	 * A benchmarked operation.
+	 */
+	interface Op {
+		/**
+		 *
+		 * @param reps the number of times to do the operation
+		 * @return a checksum of the results
+		 */
+		long run(long reps) throws Exception;
+	}
+
+	/**
+	 * The results of one benchmark.
+	 */
+	public static final class Result {
+		public final String name;
+		public final double nanosPerOp;
+		public final double error;
+		public final double bytesPerOp;
+		public final long gcs;
+		public final long gcMillis;
+
+		Result(String name, double nanosPerOp, double error, double bytesPerOp, long gcs, long gcMillis) {
+			this.name = name;
+			this.nanosPerOp = nanosPerOp;
+			this.error = error;
+			this.bytesPerOp = bytesPerOp;
+			this.gcs = gcs;
+			this.gcMillis = gcMillis;
+		}
+
+		public String toString() {
+			return String.format("%-32s %14s +- %-10s %14.1f B/op %5d gcs %6d ms", name, time(nanosPerOp),
+					time(error), bytesPerOp, gcs, gcMillis);
+		}
+	}
+
+	/**
+	 * defeats dead code elimination
+	 */
+	static volatile long sink;
+
+	final List<String> names = new ArrayList<String>();
+	final List<Op> ops = new ArrayList<Op>();
+
+	int warmups = 5;
+	int iterations = 10;
+	long targetNanos = 200_000_000L;
+
+	void add(String name, Op op) {
+		names.add(name);
+		ops.add(op);
+	}
+
+	static String time(double nanos) {
+		if (nanos < 1e3)
+			return String.format("%.1f ns/op", nanos);
+		if (nanos < 1e6)
+			return String.format("%.2f us/op", nanos / 1e3);
+		if (nanos < 1e9)
+			return String.format("%.2f ms/op", nanos / 1e6);
+		return String.format("%.2f s/op", nanos / 1e9);
+	}
+
+	private static long[] gcTotals() {
+		long count = 0;
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+			millis += Math.max(0, gc.getCollectionTime());
+		}
+		return new long[] { count, millis };
+	}
+
+	/**
+	 * Calibrates, warms up and measures one operation.
+	 */
+	Result measure(String name, Op op) throws Exception {
+		long reps = 1;
+		while (true) {
+			long start = System.nanoTime();
+			sink += op.run(reps);
+			long t = System.nanoTime() - start;
+			if (t >= targetNanos / 4 || reps >= Long.MAX_VALUE / 4) {
+				reps = Math.max(1, (long) ((double) reps * targetNanos / Math.max(1, t)));
+				break;
+			}
+			reps *= 4;
+		}
+
+		for (int i = 0; i < warmups; i++)
+			sink += op.run(reps);
+
+		double[] perOp = new double[iterations];
+		long bytes = 0;
+		long[] gcBefore = gcTotals();
+		for (int i = 0; i < iterations; i++) {
+			long allocated = Metrics.allocatedBytes();
+			long start = System.nanoTime();
+			sink += op.run(reps);
+			perOp[i] = (double) (System.nanoTime() - start) / reps;
+			bytes += Metrics.allocatedBytes() - allocated;
+		}
+		long[] gcAfter = gcTotals();
+
+		double mean = 0;
+		for (double t : perOp)
+			mean += t / iterations;
+		double var = 0;
+		for (double t : perOp)
+			var += (t - mean) * (t - mean) / Math.max(1, iterations - 1);
+
+		return new Result(name, mean, Math.sqrt(var), (double) bytes / (reps * iterations), gcAfter[0] - gcBefore[0],
+				gcAfter[1] - gcBefore[1]);
+	}
+
+	/**
+	 * Adds the standard benchmarks.
+	 */
+	void addAll() {
+		StateSpace space = StateSpace.get();
+		List<Game> list = new ArrayList<Game>();
+		for (int id = 0; id < space.size(); id++) {
+			Position p = space.position(id);
+			if (p.isXToMove() && !p.isTerminal())
+				list.add(p.toGame());
+		}
+		Game[] games = list.toArray(new Game[0]);
+		int n = games.length;
+		int[] hashes = new int[n];
+		Move[] moves = new Move[n];
+		SplittableRandom random = new SplittableRandom(42);
+		for (int i = 0; i < n; i++) {
+			hashes[i] = games[i].hashCode();
+			int cell = EpsilonGreedyPolicy.randomCell(games[i].legalMoveMask(), random);
+			moves[i] = new Move(games[i].whoseTurn, cell / 3, cell % 3);
+		}
+		TTTMDP mdp = new TTTMDP();
+		QTable qTable = new QTable();
+		for (int s = 0; s < QTable.NUM_STATES; s++)
+			for (int c = 0; c < 9; c++)
+				qTable.set(s, c, random.nextDouble());
+
+		add("Game.hashCode", reps -> {
+			long sum = 0;
+			int k = 0;
+			for (long i = 0; i < reps; i++, k = k + 1 == n ? 0 : k + 1)
+				sum += games[k].hashCode();
+			return sum;
+		});
+		add("Game.inverseHash", reps -> {
+			long sum = 0;
+			int k = 0;
+			for (long i = 0; i < reps; i++, k = k + 1 == n ? 0 : k + 1)
+				sum += Game.inverseHash(hashes[k]).board[1][1];
+			return sum;
+		});
+		add("Game.evaluateGameState", reps -> {
+			long sum = 0;
+			int k = 0;
+			for (long i = 0; i < reps; i++, k = k + 1 == n ? 0 : k + 1)
+				sum += games[k].evaluateGameState();
+			return sum;
+		});
+		add("Game.simulateMove", reps -> {
+			long sum = 0;
+			int k = 0;
+			for (long i = 0; i < reps; i++, k = k + 1 == n ? 0 : k + 1)
+				sum += games[k].simulateMove(moves[k]).state;
+			return sum;
+		});
+		add("Game.getPossibleMoves", reps -> {
+			long sum = 0;
+			int k = 0;
+			for (long i = 0; i < reps; i++, k = k + 1 == n ? 0 : k + 1)
+				sum += games[k].getPossibleMoves().size();
+			return sum;
+		});
+		add("TTTMDP.generateTransitions", reps -> {
+			long sum = 0;
+			int k = 0;
+			for (long i = 0; i < reps; i++, k = k + 1 == n ? 0 : k + 1)
+				sum += mdp.generateTransitions(games[k], moves[k]).size();
+			return sum;
+		});
+		add("QTable.getQValue", reps -> {
+			double sum = 0;
+			int k = 0;
+			for (long i = 0; i < reps; i++, k = k + 1 == n ? 0 : k + 1)
+				sum += qTable.getQValue(games[k], moves[k]);
+			return Double.doubleToLongBits(sum);
+		});
+		add("Policy.getCell", new Op() {
+			Policy policy = new ValueIterationAgent(0.9).getPolicy(); // a map, not a cached file
+			Position[] positions = list.stream().map(Position::of).toArray(Position[]::new);
+
+			public long run(long reps) {
+				long sum = 0;
+				int k = 0;
+				for (long i = 0; i < reps; i++, k = k + 1 == n ? 0 : k + 1)
+					sum += policy.getCell(positions[k]);
+				return sum;
+			}
+		});
+		add("ValueIterationAgent.iterate", new Op() {
+			ValueIterationAgent agent = new ValueIterationAgent(0.9, 10, -50, -1, 0);
+			{
+				agent.initValues();
+			}
+
+			public long run(long reps) {
+				for (long i = 0; i < reps; i++)
+					agent.iterate();
+				return agent.valueFunction.size();
+			}
+		});
+		add("PolicyIterationAgent.train", reps -> {
+			long sum = 0;
+			for (long i = 0; i < reps; i++)
+				sum += new PolicyIterationAgent(0.9).curPolicy.size();
+			return sum;
+		});
+		add("QLearningAgent.episode", new Op() {
+			// episodes as played by train(), without extracting a policy at the end
+			QLearningAgent agent = new QLearningAgent(new RandomAgent(), 0.1, 0.9, null, new SplittableRandom(7));
+			EpsilonGreedyPolicy explorer = new EpsilonGreedyPolicy(agent.qTable, agent.getEpsilonSchedule(),
+					agent.random);
+
+			public long run(long reps) {
+				for (long i = 0; i < reps; i++) {
+					agent.env.reset();
+					agent.runEpisode(explorer);
+				}
+				return agent.env.getCurrentGameState().getState();
+			}
+		});
+	}
+
+	/**
+	 *
+	 * @return the time and bytes per operation of every benchmark in a results
+	 *         file, by name
+	 */
+	static Map<String, double[]> readResults(Path file) throws IOException {
+		Map<String, double[]> results = new HashMap<String, double[]>();
+		for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+			String[] fields = line.split("\t");
+			if (fields.length == 3 && !line.startsWith("#"))
+				results.put(fields[0], new double[] { Double.parseDouble(fields[1]), Double.parseDouble(fields[2]) });
+		}
+		return results;
+	}
+
+	static void writeResults(Path file, List<Result> results) throws IOException {
+		StringBuilder sb = new StringBuilder("# benchmark\tns/op\tbytes/op\n");
+		for (Result r : results)
+			sb.append(r.name).append('\t').append(r.nanosPerOp).append('\t').append(r.bytesPerOp).append('\n');
+		Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static void main(String[] args) throws Exception {
+		Benchmarks b = new Benchmarks();
+		Pattern only = null;
+		Path save = null;
+		Path baseline = null;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "-only":
+				only = Pattern.compile(args[i + 1]);
+				break;
+			case "-iterations":
+				b.iterations = Integer.parseInt(args[i + 1]);
+				break;
+			case "-warmup":
+				b.warmups = Integer.parseInt(args[i + 1]);
+				break;
+			case "-time":
+				b.targetNanos = Long.parseLong(args[i + 1]) * 1_000_000L;
+				break;
+			case "-save":
+				save = Paths.get(args[i + 1]);
+				break;
+			case "-baseline":
+				baseline = Paths.get(args[i + 1]);
+				break;
+			default:
+				System.out.println("Unknown option " + args[i]);
+				return;
+			}
+		}
+
+		// the operations, not the counters, are measured
+		Metrics.setEnabled(false);
+		Map<String, double[]> base = baseline == null ? null : readResults(baseline);
+		b.addAll();
+
+		List<Result> results = new ArrayList<Result>();
+		for (int i = 0; i < b.names.size(); i++) {
+			String name = b.names.get(i);
+			if (only != null && !only.matcher(name).find())
+				continue;
+
+			Result r = b.measure(name, b.ops.get(i));
+			results.add(r);
+			String line = r.toString();
+			double[] then = base == null ? null : base.get(name);
+			if (then != null)
+				line += String.format("   time %+6.1f%%, alloc %+.1f B/op", 100 * (r.nanosPerOp / then[0] - 1),
+						r.bytesPerOp - then[1]);
+			System.out.println(line);
+		}
+
+		if (save != null)
+			writeResults(save, results);
+	}
+
+}
@@ -0,0 +1,159 @@
+package ticTacToe;
+
+/**
+ * Static helpers for boards held as two 9-bit masks, one for the X's and one
+ * for the O's. Bit {@code 3*x+y} stands for cell (x,y), the same numbering as
+ * {@link Game#legalMoveMask()} and {@link HumanAgent}.
+ *
+ * These are used wherever many games are simulated (self-play, batch runs,
+ * state enumeration), where cloning {@link Game} objects would dominate.
+ *
+ */
+public final class BitBoard {
+
+	/**
+	 * all 9 cells
+	 */
+	public static final int FULL = 0x1FF;
+
+	/**
+	 * The 8 lines of three: rows, columns and the two diagonals.
+	 */
+	public static final int[] LINES = { 0007, 0070, 0700, // rows x=0, x=1, x=2
+			0111, 0222, 0444, // columns y=0, y=1, y=2
+			0421, 0124 // diagonals
+	};
+
+	/**
+	 * {@code WINS[mask]} is true if {@code mask} contains a line of three.
+	 */
+	private static final boolean[] WINS = new boolean[1 << 9];
+
+	/**
+	 * {@code THREATS[mask]} holds the cells that would complete a line for a
+	 * player holding {@code mask}.
+	 */
+	private static final short[] THREATS = new short[1 << 9];
+
+	/**
+	 * {@code POW3[c]} is the weight of cell {@code c} in the base 3 hash of
+	 * {@link Game#hashCode}.
+	 */
+	private static final int[] POW3 = new int[9];
+
+	static {
+		for (int mask = 0; mask <= FULL; mask++)
+			for (int line : LINES)
+				if ((mask & line) == line)
+					WINS[mask] = true;
+				else if (Integer.bitCount(mask & line) == 2)
+					THREATS[mask] |= line & ~mask;
+
+		int p = 3;
+		for (int c = 8; c >= 0; c--) {
+			POW3[c] = p;
+			p *= 3;
+		}
+	}
+
+	private BitBoard() {
+	}
+
+	/**
+	 *
+	 * @param mask the cells of one player
+	 * @return true if they hold a line of three
+	 */
+	public static boolean hasLine(int mask) {
+		return WINS[mask];
+	}
+
+	/**
+	 * The cells that would give a player three in a row. Cells taken by the other
+	 * player are included, so mask the result with the free cells: for the
+	 * player to move, {@code threats(mine) & free} are the winning moves and
+	 * {@code threats(theirs) & free} the moves that must be blocked.
+	 *
+	 * @param mask the cells of one player
+	 * @return the cells that complete one of their lines, as a mask
+	 */
+	public static int threats(int mask) {
+		return THREATS[mask];
+	}
+
+	/**
+	 * Evaluates a board in the same way as {@link Game#evaluateGameState()}.
+	 *
+	 * @param xMask
+	 * @param oMask
+	 * @return one of {@link Game#X_WON}, {@link Game#O_WON}, {@link Game#DRAW}
+	 *         or {@link Game#ONGOING}
+	 */
+	public static int evaluate(int xMask, int oMask) {
+		if (WINS[xMask])
+			return Game.X_WON;
+		if (WINS[oMask])
+			return Game.O_WON;
+		if ((xMask | oMask) == FULL)
+			return Game.DRAW;
+
+		return Game.ONGOING;
+	}
+
+	/**
+	 *
+	 * @param xMask
+	 * @param oMask
+	 * @param xToMove whose turn it is
+	 * @return the same value {@link Game#hashCode} returns for this board
+	 */
+	public static int encode(int xMask, int oMask, boolean xToMove) {
+		int hash = xToMove ? 1 : 2;
+		for (int m = xMask; m != 0; m &= m - 1)
+			hash += POW3[Integer.numberOfTrailingZeros(m)];
+		for (int m = oMask; m != 0; m &= m - 1)
+			hash += 2 * POW3[Integer.numberOfTrailingZeros(m)];
+
+		return hash;
+	}
+
+	/**
+	 *
+	 * @param hash a game hash, see {@link Game#hashCode}
+	 * @return the X's of the board encoded by {@code hash}
+	 */
+	public static int xMaskOf(int hash) {
+		return digitMask(hash, 1);
+	}
+
+	/**
+	 *
+	 * @param hash a game hash, see {@link Game#hashCode}
+	 * @return the O's of the board encoded by {@code hash}
+	 */
+	public static int oMaskOf(int hash) {
+		return digitMask(hash, 2);
+	}
+
+	/**
+	 *
+	 * @param hash a game hash, see {@link Game#hashCode}
+	 * @return true if it is X's turn in the game encoded by {@code hash}
+	 */
+	public static boolean xToMoveOf(int hash) {
+		return hash % 3 == 1;
+	}
+
+	private static int digitMask(int hash, int digit) {
+		int mask = 0;
+		hash /= 3; // drop whose turn it is
+		for (int c = 8; c >= 0; c--) {
+			if (hash % 3 == digit)
+				mask |= 1 << c;
+			hash /= 3;
+		}
+
+		return mask;
+	}
+
+}
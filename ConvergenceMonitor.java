@@ -0,0 +1,299 @@
+package ticTacToe;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Watches a Q-learning run and decides when it has converged.
+ *
+ * Every {@link #interval} episodes the trainer calls {@link #check}, which
+ * reports a {@link TrainingMetrics} to the listener and tests the stopping
+ * criteria. Training has converged once all of the enabled criteria hold:
+ * <ul>
+ * <li>the largest q-value change in the interval is at most
+ * {@link #maxDelta};</li>
+ * <li>the greedy policy has not changed in any state for
+ * {@link #stableChecks} consecutive checks;</li>
+ * <li>if a reference policy is set (e.g. the policy of a
+ * {@link ValueIterationAgent}), the greedy move agrees with it in at least
+ * {@link #minAgreement} of the states. Given the agent itself rather than just
+ * its policy, any move that is optimal under the agent's values agrees, which
+ * matters since tied optimal moves are common.</li>
+ * </ul>
+ *
+ * Policies are compared on the non-terminal states the learner can meet in a
+ * {@link TTTEnvironment} (X to move, with as many X's as O's on the board) and
+ * has updated at least {@link #minVisits} times. The q-values of states that
+ * training has rarely reached are mostly noise, and say nothing about
+ * convergence.
+ *
+ */
+public class ConvergenceMonitor {
+
+	/**
+	 * the number of episodes between checks
+	 */
+	int interval = 1000;
+
+	/**
+	 * the largest q-value change within an interval that still counts as
+	 * converged. A negative value disables this criterion.
+	 */
+	double maxDelta = 1e-3;
+
+	/**
+	 * the number of consecutive checks without a greedy policy change needed. 0
+	 * disables this criterion.
+	 */
+	int stableChecks = 3;
+
+	double minAgreement = 0.95;
+
+	/**
+	 * the number of updates a state needs before it is compared
+	 */
+	int minVisits = 50;
+
+	/**
+	 * the number of updates of each state, by hash
+	 */
+	int[] visits = new int[QTable.NUM_STATES];
+
+	TrainingListener listener = null;
+
+	/**
+	 * the states compared, by hash, and their legal moves
+	 */
+	int[] states;
+	int[] masks;
+
+	/**
+	 * the greedy move in each state at the previous check
+	 */
+	byte[] greedy;
+
+	/**
+	 * the moves agreeing with the reference in each state, as a mask of cells
+	 */
+	int[] referenceMoves;
+
+	// running counts for the current interval
+	long wins, draws, losses;
+	long updates;
+	double sumAbsDelta, maxAbsDelta;
+	long intervalStart = System.nanoTime();
+	long intervalStartEpisodes = 0;
+
+	int stableFor = 0;
+	boolean converged = false;
+
+	/**
+	 *
+	 * @param interval     the number of episodes between checks
+	 * @param maxDelta     the largest q-value change in an interval still
+	 *                     counting as converged, or a negative value to ignore
+	 *                     q-value changes
+	 * @param stableChecks the number of consecutive checks the greedy policy must
+	 *                     not change for, or 0 to ignore policy changes
+	 */
+	public ConvergenceMonitor(int interval, double maxDelta, int stableChecks) {
+		if (interval < 1)
+			throw new IllegalArgumentException("The check interval should be at least one episode");
+
+		this.interval = interval;
+		this.maxDelta = maxDelta;
+		this.stableChecks = stableChecks;
+
+		List<Game> games = states();
+		states = new int[games.size()];
+		masks = new int[games.size()];
+		greedy = new byte[games.size()];
+		for (int i = 0; i < states.length; i++) {
+			states[i] = games.get(i).hashCode();
+			masks[i] = games.get(i).legalMoveMask();
+			greedy[i] = -1;
+		}
+	}
+
+	/**
+	 *
+	 * @return the states on which policies are compared
+	 */
+	private static List<Game> states() {
+		List<Game> result = new ArrayList<Game>();
+		for (Game g : Game.generateAllValidGames('X'))
+			if (!g.isTerminal() && Integer.bitCount(g.marks('X')) == Integer.bitCount(g.marks('O')))
+				result.add(g);
+
+		return result;
+	}
+
+	/**
+	 * Also requires the greedy policy to play the move of {@code reference} in a
+	 * fraction {@code minAgreement} of the states.
+	 *
+	 * @param reference    e.g. the policy of a {@link ValueIterationAgent}
+	 * @param minAgreement between 0 and 1
+	 */
+	public void setReference(Policy reference, double minAgreement) {
+		this.minAgreement = minAgreement;
+		this.referenceMoves = new int[states.length];
+		for (int i = 0; i < states.length; i++) {
+			Move m = reference.getMove(Game.inverseHash(states[i]));
+			referenceMoves[i] = m == null ? 0 : 1 << (m.x * 3 + m.y);
+		}
+	}
+
+	/**
+	 * Also requires the greedy policy to play a move that is optimal under the
+	 * values of {@code reference} in a fraction {@code minAgreement} of the
+	 * states.
+	 *
+	 * @param reference    a value iteration agent trained in this process, e.g.
+	 *                     by {@link ValueIterationAgent#ValueIterationAgent(double)}
+	 * @param minAgreement between 0 and 1
+	 */
+	public void setReference(ValueIterationAgent reference, double minAgreement) {
+		if (reference.valueFunction.isEmpty())
+			throw new IllegalArgumentException("The reference agent has no values: it was not trained");
+
+		this.minAgreement = minAgreement;
+		this.referenceMoves = new int[states.length];
+		for (int i = 0; i < states.length; i++) {
+			Game g = Game.inverseHash(states[i]);
+			double[] q = new double[9];
+			double max = Double.NEGATIVE_INFINITY;
+			for (Move m : g.getPossibleMoves()) {
+				double v = 0.0;
+				for (TransitionProb t : reference.mdp.generateTransitions(g, m))
+					v += t.prob * (t.outcome.localReward + reference.discount * reference.valueFunction.get(t.outcome.sPrime));
+				q[m.x * 3 + m.y] = v;
+				max = Math.max(max, v);
+			}
+			for (Move m : g.getPossibleMoves())
+				if (q[m.x * 3 + m.y] >= max - 1e-9)
+					referenceMoves[i] |= 1 << (m.x * 3 + m.y);
+		}
+	}
+
+	public void setListener(TrainingListener listener) {
+		this.listener = listener;
+	}
+
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Starts timing the first interval. Called by the trainer when training
+	 * starts.
+	 *
+	 * @param episodes the number of episodes trained before
+	 */
+	public void start(long episodes) {
+		intervalStart = System.nanoTime();
+		intervalStartEpisodes = episodes;
+	}
+
+	/**
+	 * Sets the number of updates a state needs before its greedy move is
+	 * compared.
+	 *
+	 * @param minVisits
+	 */
+	public void setMinVisits(int minVisits) {
+		this.minVisits = minVisits;
+	}
+
+	/**
+	 * Records a q-value update.
+	 *
+	 * @param state the hash of the state updated
+	 * @param delta the change in the q-value
+	 */
+	public void recordUpdate(int state, double delta) {
+		visits[state]++;
+		double abs = Math.abs(delta);
+		sumAbsDelta += abs;
+		maxAbsDelta = Math.max(maxAbsDelta, abs);
+		updates++;
+	}
+
+	/**
+	 * Records the end of an episode.
+	 *
+	 * @param state the final game state, see {@link Game#getState()}
+	 */
+	public void recordEpisode(int state) {
+		if (state == Game.X_WON)
+			wins++;
+		else if (state == Game.O_WON)
+			losses++;
+		else
+			draws++;
+	}
+
+	/**
+	 * Ends the current interval: reports its metrics and checks the stopping
+	 * criteria.
+	 *
+	 * @param qTable   the table being learned
+	 * @param episodes the number of episodes trained so far
+	 * @return true if training has converged
+	 */
+	public boolean check(QTable qTable, long episodes) {
+		int changes = 0;
+		int agreeing = 0, compared = 0;
+		for (int i = 0; i < states.length; i++) {
+			if (visits[states[i]] < minVisits)
+				continue;
+
+			int cell = qTable.argmax(states[i], masks[i]);
+			if (cell != greedy[i]) {
+				changes++;
+				greedy[i] = (byte) cell;
+			}
+			if (referenceMoves != null && referenceMoves[i] != 0) {
+				compared++;
+				if ((referenceMoves[i] >> cell & 1) != 0)
+					agreeing++;
+			}
+		}
+		double agreement = referenceMoves == null ? Double.NaN : compared == 0 ? 1.0 : (double) agreeing / compared;
+
+		long now = System.nanoTime();
+		long played = wins + draws + losses;
+		double seconds = (now - intervalStart) / 1e9;
+		TrainingMetrics metrics = new TrainingMetrics(episodes,
+				seconds > 0 ? (episodes - intervalStartEpisodes) / seconds : 0.0, rate(wins, played),
+				rate(draws, played), rate(losses, played), updates == 0 ? 0.0 : sumAbsDelta / updates, maxAbsDelta,
+				changes, agreement);
+
+		stableFor = changes == 0 ? stableFor + 1 : 0;
+		converged = (maxDelta < 0 || maxAbsDelta <= maxDelta) && stableFor >= stableChecks
+				&& (referenceMoves == null || agreement >= minAgreement);
+
+		if (listener != null)
+			listener.onInterval(metrics);
+
+		wins = draws = losses = updates = 0;
+		sumAbsDelta = maxAbsDelta = 0.0;
+		intervalStart = now;
+		intervalStartEpisodes = episodes;
+
+		return converged;
+	}
+
+	private static double rate(long n, long of) {
+		return of == 0 ? 0.0 : (double) n / of;
+	}
+
+	/**
+	 *
+	 * @return true if the last check found training converged
+	 */
+	public boolean isConverged() {
+		return converged;
+	}
+
+}
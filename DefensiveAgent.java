@@ -1,5 +1,7 @@
 package ticTacToe;
 
+import java.util.SplittableRandom;
+
 /**
  * A defensive agent: if there is a move to block the opponent this agent will play it. Otherwise plays randomly.
  * @author ae187
@@ -11,5 +13,10 @@ public class DefensiveAgent extends Agent {
 	{
 		super(new DefensivePolicy());
 	}
+	
+	public DefensiveAgent(SplittableRandom r)
+	{
+		super(new DefensivePolicy(r));
+	}
 
 }
@@ -1,41 +1,60 @@
 package ticTacToe;
 
 
-import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 /**
  * A defensive policy: if there is a move to block the opponent's X's or O's in a row, this policy finds it and returns it. Otherwise
  * returns random move.
+ * 
+ * The opponent's threats are looked up in {@link BitBoard#threats}, so a move costs a few table lookups: no game is cloned or
+ * re-evaluated. Of several threats, the one in the lowest cell is blocked.
  * @author ae187
  *
  */
 public class DefensivePolicy extends Policy {
 	
-public Move getMove(Game g) {
-		
-		
-		List<Move> moves=g.getPossibleMovesByOpponent();
-		
-		for(Move m: moves)
-		{
-			Game resulting=g.clone();
-			resulting.getBoard()[m.x][m.y]=m.who.getName();
-			resulting.evaluateGameState();
-			if (resulting.getState()==Game.X_WON||resulting.getState()==Game.O_WON)
-			{
-				Move newMove=new Move(m.who.getName()=='X'?'O':'X', m.x,m.y);
-				System.out.println("Playing defensive move");
-				return newMove;
-			}
-		}
+	SplittableRandom r;
+	
+	public DefensivePolicy()
+	{
+		this(Rng.split());
+	}
+	
+	public DefensivePolicy(SplittableRandom r)
+	{
+		this.r=r;
+	}
+	
+	/**
+	 * 
+	 * @param mine the cells of the player to move
+	 * @param theirs the cells of the other player
+	 * @return a cell blocking a line of the other player if there is one, else a random free cell
+	 */
+	int selectCell(int mine, int theirs)
+	{
+		int free=BitBoard.FULL & ~(mine|theirs);
+		int blocks=BitBoard.threats(theirs) & free;
+		if (blocks!=0)
+			return Integer.numberOfTrailingZeros(blocks);
 		
-		Random r=new Random();
-		System.out.println("Playing random move");
-		Move randomMove=moves.get(r.nextInt(moves.size()));
-		Move myMove=new Move(randomMove.who.getName()=='X'?'O':'X', randomMove.x,randomMove.y);
+		return EpsilonGreedyPolicy.randomCell(free, r);
+	}
+	
+	public Move getMove(Game g) {
+		if (g.legalMoveMask()==0)
+			return null;
 		
-		return myMove;
+		char me=g.whoseTurn.getName();
+		int cell=selectCell(g.marks(me), g.marks(me=='X'?'O':'X'));
+		return new Move(g.whoseTurn, cell/3, cell%3);
+	}
+	
+	public int getCell(Position p) {
+		if (p.legalMoves()==0)
+			return -1;
 		
+		return p.isXToMove() ? selectCell(p.xMask(), p.oMask()) : selectCell(p.oMask(), p.xMask());
 	}
 
 }
@@ -1,13 +1,150 @@
 package ticTacToe;
 
+import java.util.SplittableRandom;
+
 /**
- * to do for next year
- * @author ae187
+ * An epsilon-greedy policy over a {@link QTable}: with probability epsilon it
+ * explores, picking a legal move uniformly at random; otherwise it exploits,
+ * picking the legal move with the highest q-value. Epsilon follows an
+ * {@link EpsilonSchedule} and is looked up for the current episode, which the
+ * trainer advances with {@link #setEpisode(long)}.
+ *
+ * The same selector is used for training, evaluation and serving: a policy
+ * with a {@link EpsilonSchedule#constant(double)} schedule of 0 is the greedy
+ * policy of the table.
+ *
+ * Moves are selected on the legal-move bitmask of a state (see
+ * {@link Game#legalMoveMask()}) with {@link #selectCell(int, int)}, which does
+ * not allocate.
  *
  */
 public class EpsilonGreedyPolicy extends Policy {
-	
-	
-	
+
+	QTable qTable;
+
+	EpsilonSchedule schedule;
+
+	SplittableRandom random;
+
+	/**
+	 * the current episode, from which epsilon is determined
+	 */
+	long episode = 0;
+
+	/**
+	 *
+	 * @param qTable   the q-values to be greedy with respect to
+	 * @param schedule the exploration schedule
+	 * @param random   the generator used for exploring. Not to be shared between
+	 *                 threads.
+	 */
+	public EpsilonGreedyPolicy(QTable qTable, EpsilonSchedule schedule, SplittableRandom random) {
+		this.qTable = qTable;
+		this.schedule = schedule;
+		this.random = random;
+	}
+
+	/**
+	 * The greedy policy of {@code qTable}, i.e. one that never explores.
+	 *
+	 * @param qTable
+	 */
+	public EpsilonGreedyPolicy(QTable qTable) {
+		this(qTable, EpsilonSchedule.constant(0.0), Rng.split());
+	}
+
+	public void setEpisode(long episode) {
+		this.episode = episode;
+	}
+
+	public long getEpisode() {
+		return episode;
+	}
+
+	/**
+	 *
+	 * @return epsilon in the current episode
+	 */
+	public double getEpsilon() {
+		return schedule.epsilon(episode);
+	}
+
+	/**
+	 * Selects a move.
+	 *
+	 * @param state     the game hash, see {@link Game#hashCode}
+	 * @param legalMask the legal moves in {@code state}
+	 * @return the cell index {@code 3*x+y} of the move selected, or -1 if there
+	 *         are no legal moves.
+	 */
+	public int selectCell(int state, int legalMask) {
+		if (legalMask == 0)
+			return -1;
+
+		double epsilon = schedule.epsilon(episode);
+		if (epsilon > 0 && random.nextDouble() < epsilon)
+			return randomCell(legalMask, random);
+
+		return qTable.argmax(state, legalMask);
+	}
+
+	/**
+	 *
+	 * @param state
+	 * @param legalMask
+	 * @return the cell of the greedy move, never exploring
+	 */
+	public int greedyCell(int state, int legalMask) {
+		return qTable.argmax(state, legalMask);
+	}
+
+	/**
+	 *
+	 * @param legalMask a non-empty mask of legal moves
+	 * @param random
+	 * @return one of the cells in {@code legalMask}, with equal probability
+	 */
+	static int randomCell(int legalMask, SplittableRandom random) {
+		int n = random.nextInt(Integer.bitCount(legalMask));
+		int m = legalMask;
+		for (; n > 0; n--)
+			m &= m - 1; // drop the lowest set bit
+
+		return Integer.numberOfTrailingZeros(m);
+	}
+
+	/**
+	 * 
+	 * @param g
+	 * @return the row of the q-table that holds the q-values of {@code g}: its
+	 *         hash by default.
+	 */
+	protected int stateOf(Game g) {
+		return g.hashCode();
+	}
+
+	/**
+	 * 
+	 * @param p
+	 * @return the row of the q-table that holds the q-values of {@code p}; the
+	 *         same row as {@link #stateOf(Game)} for a game in that position
+	 */
+	protected int stateOf(Position p) {
+		return p.hash();
+	}
+
+	@Override
+	public int getCell(Position p) {
+		return selectCell(stateOf(p), p.legalMoves());
+	}
+
+	@Override
+	public Move getMove(Game g) {
+		int cell = selectCell(stateOf(g), g.legalMoveMask());
+		if (cell < 0)
+			return null;
+
+		return new Move(g.whoseTurn, cell / 3, cell % 3);
+	}
 
 }
@@ -0,0 +1,70 @@
+package ticTacToe;
+
+/**
+ * How the exploration rate (epsilon) of an {@link EpsilonGreedyPolicy} changes
+ * over the course of training. The three usual schedules - constant, linear
+ * decay and exponential decay - are provided as factory methods.
+ *
+ */
+public interface EpsilonSchedule {
+
+	/**
+	 *
+	 * @param episode the number of episodes played so far (from 0)
+	 * @return the probability of exploring during episode {@code episode}
+	 */
+	double epsilon(long episode);
+
+	/**
+	 *
+	 * @param epsilon
+	 * @return a schedule that always explores with probability {@code epsilon}
+	 */
+	static EpsilonSchedule constant(double epsilon) {
+		checkProbability(epsilon);
+		return episode -> epsilon;
+	}
+
+	/**
+	 * Decays epsilon linearly from {@code start} to {@code end} over
+	 * {@code episodes} episodes, and stays at {@code end} afterwards.
+	 *
+	 * @param start
+	 * @param end
+	 * @param episodes
+	 * @return
+	 */
+	static EpsilonSchedule linear(double start, double end, long episodes) {
+		checkProbability(start);
+		checkProbability(end);
+		if (episodes <= 0)
+			throw new IllegalArgumentException("The number of decay episodes should be positive");
+
+		return episode -> episode >= episodes ? end : start + (end - start) * episode / episodes;
+	}
+
+	/**
+	 * Multiplies epsilon by {@code decay} every episode, starting from
+	 * {@code start} and never going below {@code end}.
+	 *
+	 * @param start
+	 * @param end
+	 * @param decay the per-episode decay factor, between 0 and 1
+	 * @return
+	 */
+	static EpsilonSchedule exponential(double start, double end, double decay) {
+		checkProbability(start);
+		checkProbability(end);
+		if (decay <= 0 || decay > 1)
+			throw new IllegalArgumentException("The decay factor should be in (0,1]");
+
+		double logDecay = Math.log(decay);
+		return episode -> Math.max(end, start * Math.exp(logDecay * episode));
+	}
+
+	private static void checkProbability(double p) {
+		if (p < 0 || p > 1)
+			throw new IllegalArgumentException("Epsilon should be between 0 and 1, got " + p);
+	}
+
+}
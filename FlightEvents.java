@@ -0,0 +1,154 @@
+package ticTacToe;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events for training and matches, so that a slow or
+ * stalled run can be looked into with a flight recording instead of print
+ * statements:
+ *
+ * <pre>
+ * java -XX:StartFlightRecording:settings=default,settings=ticTacToe.jfc,filename=run.jfr ticTacToe.Tournament
+ * jfr print --events ticTacToe.* run.jfr
+ * </pre>
+ *
+ * {@code ticTacToe.jfc}, next to the sources, adds these events to the JVM's
+ * default profile, each enabled unless it fires once per game. While no
+ * recording is running, or an event is disabled, emitting it costs a check of
+ * a flag; values that are only needed for an event, such as the residual of a
+ * value iteration sweep, are only computed while it is enabled.
+ *
+ */
+public final class FlightEvents {
+
+	private FlightEvents() {
+	}
+
+	@Name("ticTacToe.ValueIterationSweep")
+	@Label("Value Iteration Sweep")
+	@Category({ "Tic Tac Toe", "Training" })
+	@Description("One sweep of value iteration over every state")
+	public static class ValueIterationSweep extends Event {
+		@Label("Sweep")
+		public int sweep;
+
+		@Label("States Backed Up")
+		public int states;
+
+		@Label("Residual")
+		@Description("The largest change of a state's value in the sweep")
+		public double residual;
+	}
+
+	@Name("ticTacToe.PolicyEvaluation")
+	@Label("Policy Evaluation")
+	@Category({ "Tic Tac Toe", "Training" })
+	@Description("One round of policy evaluation, sweeping until the values converge")
+	public static class PolicyEvaluation extends Event {
+		@Label("Sweeps")
+		public int sweeps;
+
+		@Label("States")
+		public int states;
+
+		@Label("Residual")
+		@Description("The largest change of a state's value in the last sweep")
+		public double residual;
+	}
+
+	@Name("ticTacToe.PolicyImprovement")
+	@Label("Policy Improvement")
+	@Category({ "Tic Tac Toe", "Training" })
+	@Description("One round of policy improvement")
+	public static class PolicyImprovement extends Event {
+		@Label("States")
+		public int states;
+
+		@Label("Changed States")
+		@Description("The number of states whose move changed")
+		public int changed;
+	}
+
+	@Name("ticTacToe.QLearningBatch")
+	@Label("Q-Learning Batch")
+	@Category({ "Tic Tac Toe", "Training" })
+	@Description("A batch of Q-learning episodes")
+	public static class QLearningBatch extends Event {
+		/**
+		 * the number of episodes per batch
+		 */
+		static final int EPISODES = 1000;
+
+		@Label("Episodes")
+		public int episodes;
+
+		@Label("Episodes Trained")
+		@Description("The total number of episodes trained at the end of the batch")
+		public long episodesTrained;
+
+		@Label("Mean Reward")
+		@Description("The mean total reward of an episode in the batch")
+		public double meanReward;
+
+		@Label("Epsilon")
+		@Description("The exploration rate at the end of the batch")
+		public double epsilon;
+	}
+
+	@Name("ticTacToe.Match")
+	@Label("Match")
+	@Category({ "Tic Tac Toe", "Matches" })
+	@Description("One game played out by Game.play, e.g. in a batch run or tournament")
+	public static class Match extends Event {
+		@Label("X Agent")
+		public String xAgent;
+
+		@Label("O Agent")
+		public String oAgent;
+
+		@Label("Starter")
+		public char starter;
+
+		@Label("Result")
+		@Description("X, O or D")
+		public char result;
+
+		@Label("Moves")
+		public int moves;
+	}
+
+	@Name("ticTacToe.MatchRun")
+	@Label("Match Run")
+	@Category({ "Tic Tac Toe", "Matches" })
+	@Description("A batch of games between two agents, see MatchRunner")
+	public static class MatchRun extends Event {
+		@Label("Games")
+		public long games;
+
+		@Label("Threads")
+		public int threads;
+
+		@Label("X Wins")
+		public long xWins;
+
+		@Label("O Wins")
+		public long oWins;
+
+		@Label("Draws")
+		public long draws;
+	}
+
+	/**
+	 *
+	 * @param state a final game state
+	 * @return 'X', 'O' or 'D'
+	 */
+	static char resultOf(int state) {
+		return state == Game.X_WON ? 'X' : state == Game.O_WON ? 'O' : 'D';
+	}
+
+}
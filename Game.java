@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This is a class that defines the environment of a Tic Tac Toe Game: its
@@ -29,6 +30,14 @@ public class Game {
 	public static final int O_WON = 2;
 	public static final int ONGOING = 0;
 
+	/**
+	 * see {@link Metrics}
+	 */
+	static final Metrics.Counter COPIES = Metrics.counter("game.copies");
+	static final Metrics.Counter HASHES = Metrics.counter("game.hashes");
+	static final Metrics.Counter MOVES = Metrics.counter("game.moves");
+	static final Metrics.Counter GAMES = Metrics.counter("game.played");
+
 	/**
 	 * this integer represents the state of the game, and is set by
 	 * {@link #evaluateGameState()} after every move DO NOT CONFUSE THIS with an MDP
@@ -111,6 +120,7 @@ public class Game {
 	 * 
 	 */
 	public Game(Game g) {
+		COPIES.increment();
 		this.x = g.x;
 		this.o = g.o;
 		this.whoseTurn = g.whoseTurn;
@@ -122,6 +132,21 @@ public class Game {
 
 	}
 
+	/**
+	 * Starts a new game on this object, keeping the same agents, so that many
+	 * games can be played without creating new ones.
+	 * 
+	 * @param whoseTurn the agent that starts: this game's X or O agent
+	 */
+	public void reset(Agent whoseTurn) {
+		if (whoseTurn != x && whoseTurn != o)
+			throw new IllegalArgumentException("Agent with current turn is not one of the game agents");
+
+		this.whoseTurn = whoseTurn;
+		this.state = ONGOING;
+		initBoard();
+	}
+
 	public void initBoard() {
 		// fill the board with e's (empty cells)
 		for (int i = 0; i < 3; i++)
@@ -176,28 +201,19 @@ public class Game {
 	 * or O's turn as specified by {@code xo} argument. NOTE: this method will
 	 * include ALL terminal states in the game.
 	 * 
+	 * Only positions that can be reached in play, from an empty board with either
+	 * player to move, are generated; see {@link StateSpace}. They come in layer
+	 * order, by the number of marks on the board.
+	 * 
 	 * @param xo specifies whose turn it should be in the resulting games.
 	 * @return
 	 */
 	public static List<Game> generateAllValidGames(char xo) {
+		StateSpace space = StateSpace.get();
 		List<Game> result = new ArrayList<Game>();
-		// this is the number of possible game hashes (2222222222 in base 3): 59048 -
-		// not all are valid. Here we only return the valid ones.
-		for (int i = 0; i < 59048; i++) {
-			Game g = inverseHash(i);
-			if (g == null)
-				continue;
-
-			if (g.isValid()) {
-				// System.out.println("for:"+i);
-				// System.out.println("got:\n"+g);
-				// System.out.println("turn:"+g.whoseTurn.getName());
-				// System.out.println("--------");
-				g.evaluateGameState();
-				if (g.whoseTurn.getName() == xo || g.isTerminal())
-					result.add(g);
-			}
-
+		for (int id = 0; id < space.size(); id++) {
+			if (space.isTerminal(id) || BitBoard.xToMoveOf(space.hash(id)) == (xo == 'X'))
+				result.add(space.game(id));
 		}
 
 		return result;
@@ -250,6 +266,35 @@ public class Game {
 		return board;
 	}
 
+	/**
+	 * The legal moves of the agent whose turn it is as a bitmask: bit {@code 3*x+y}
+	 * is set if cell (x,y) is empty. This is the same cell numbering as the one
+	 * shown by {@link HumanAgent}.
+	 * 
+	 * @return the mask of empty cells, or 0 if the game is over.
+	 */
+	public int legalMoveMask() {
+		if (getState() != ONGOING)
+			return 0;
+
+		return marks(' ');
+	}
+
+	/**
+	 * 
+	 * @param xo one of 'X', 'O' or ' '
+	 * @return the cells holding {@code xo} as a bitmask, bit {@code 3*x+y} for cell
+	 *         (x,y)
+	 */
+	public int marks(char xo) {
+		int mask = 0;
+		for (int c = 0; c < 9; c++)
+			if (board[c / 3][c % 3] == xo)
+				mask |= 1 << c;
+
+		return mask;
+	}
+
 	public String toString() {
 		String result = "\n";
 		for (int i = 0; i < 3; i++) {
@@ -465,6 +510,7 @@ public class Game {
 		if (board[m.x][m.y] != ' ')
 			throw new IllegalMoveException("Invalid move. The location (" + m.x + "," + m.y + ") is not empty");
 
+		MOVES.increment();
 		board[m.x][m.y] = m.who.getName();
 		if (whoseTurn.getName() == 'X')
 			whoseTurn = o;
@@ -530,6 +576,42 @@ public class Game {
 
 	}
 
+	/**
+	 * Plays the game out like {@link #playOut()}, but without printing anything,
+	 * and logs it to {@code transcript}.
+	 * 
+	 * @param transcript where the finished game is logged, or null
+	 * @return the final state of the game
+	 * @throws IllegalMoveException
+	 */
+	public int play(TranscriptWriter transcript) throws IllegalMoveException {
+		FlightEvents.Match event = new FlightEvents.Match();
+		event.begin();
+		char starter = whoseTurn.getName();
+		byte[] cells = transcript == null ? null : new byte[9];
+		int numMoves = 0;
+		while (this.state == ONGOING) {
+			Move m = this.whoseTurn.getMove(this);
+			executeMove(m);
+			if (cells != null)
+				cells[numMoves++] = (byte) (m.x * 3 + m.y);
+		}
+
+		GAMES.increment();
+		if (event.shouldCommit()) {
+			event.xAgent = x.getClass().getSimpleName();
+			event.oAgent = o.getClass().getSimpleName();
+			event.starter = starter;
+			event.result = FlightEvents.resultOf(state);
+			event.moves = Integer.bitCount(marks('X') | marks('O'));
+			event.commit();
+		}
+		if (transcript != null)
+			transcript.append(starter, x.getClass().getSimpleName(), o.getClass().getSimpleName(), state, cells,
+					numMoves);
+		return state;
+	}
+
 	/**
 	 * Deep copy
 	 */
@@ -555,27 +637,26 @@ public class Game {
 		// ' ' ->0
 		// 'X' ->1
 		// 'O' ->2
-		String s = "";
+		// the digits are accumulated most significant first, exactly as
+		// Integer.parseInt(s, 3) would read the 10 character string.
+		HASHES.increment();
+		int hash = 0;
 		for (int i = 0; i < 3; i++)
 			for (int j = 0; j < 3; j++) {
+				hash *= 3;
 				switch (board[i][j]) {
 				case 'X':
-					s += "1";
+					hash += 1;
 					break;
 				case 'O':
-					s += "2";
-					break;
-				case ' ':
-					s += "0";
+					hash += 2;
 					break;
 				}
 
 			}
 		// also encode whose turn it is. Either 1 or 2 (x or o)
 
-		s += (whoseTurn == x) ? "1" : "2";
-
-		return Integer.parseInt(s, 3);
+		return hash * 3 + ((whoseTurn == x) ? 1 : 2);
 
 	}
 
@@ -651,9 +732,15 @@ public class Game {
 		return this.state != ONGOING;
 	}
 
-	public static final String help = " -h this menu" + "\n -x the X agent: -x <pi, vi, random, agg, def, human>"
-			+ "\n -o the O agent: -o <random, agg, def, human>"
-			+ "\n -s the agent that starts the game (x or o): -s <x or o>";
+	public static final String help = " -h this menu" + "\n -x the X agent: -x <pi, vi, ql, sp, random, agg, def, rule, human>"
+			+ "\n -o the O agent: -o <ql, sp, random, agg, def, rule, human>"
+			+ "\n -s the agent that starts the game (x or o): -s <x or o>"
+			+ "\n -seed seeds every random policy and learner, for reproducible runs: -seed <long>"
+			+ "\n -bg start playing at once: vi and ql agents play aggressively until trained in the background"
+			+ "\n -n play a number of games without printing them, and print the results: -n <games>"
+			+ "\n -quiet play without printing the board, e.g. -n 1000000 -quiet"
+			+ "\n -threads the number of threads playing -n games: -threads <n>"
+			+ "\n -metrics print engine counters every 10 seconds and on exit, including training";
 
 	// public static void main(String args[]) throws IllegalMoveException
 	// {
@@ -684,6 +771,17 @@ public class Game {
 	// System.out.println("there were:"+games.size());
 	// }
 
+	/**
+	 * 
+	 * @return a policy for either side, trained by self-play
+	 */
+	private static Policy trainSelfPlay() {
+		SelfPlayTrainer trainer = new SelfPlayTrainer(0.5, 0.9, EpsilonSchedule.linear(1.0, 0.1, 150000),
+				Runtime.getRuntime().availableProcessors());
+		trainer.train(200000);
+		return trainer.extractPolicy();
+	}
+
 	/**
 	 * 
 	 * @param a
@@ -697,9 +795,38 @@ public class Game {
 			return;
 		}
 
+		// the seed has to be set before any agent is created
+		int seedAt = args.indexOf("-seed");
+		if (seedAt >= 0) {
+			if (seedAt + 1 >= args.size()) {
+				System.out.println("Error: -seed should be followed by a number");
+				return;
+			}
+			try {
+				Rng.setSeed(Long.parseLong(args.get(seedAt + 1)));
+			} catch (NumberFormatException e) {
+				System.out.println("Error: -seed should be followed by a number");
+				return;
+			}
+		}
+
+		// vi and ql agents train on a background thread, playing a fallback meanwhile
+		boolean background = args.contains("-bg");
+
+		// started before any agent is made, so that training is counted too
+		if (args.contains("-metrics")) {
+			Metrics.startDump(10, TimeUnit.SECONDS, System.out);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.print("--- metrics total ---\n" + Metrics.snapshot())));
+		}
+
 		Agent x = null;
 		Agent o = null;
+		// trained at most once, even if both agents are self-play agents
+		Policy selfPlay = null;
 		String whoseTurn = null;
+		long games = 1;
+		boolean quiet = false;
+		int threads = 1;
 		Iterator<String> iter = args.iterator();
 
 		while (iter.hasNext()) {
@@ -709,12 +836,13 @@ public class Game {
 			case "-x":
 				next = iter.next();
 				if (next == null || next.startsWith("-")) {
-					System.out.println("-x should be followed by the agent name, vi, pi, random, agg, def, or human");
+					System.out.println("-x should be followed by the agent name: vi, pi, ql, sp, random, agg, def, rule or human");
 					return;
 				}
 				if (next.equals("vi")) {
 					System.out.println("x is vi agent.");
-					x = new ValueIterationAgent();
+					x = background ? BackgroundTrainedAgent.valueIteration(TrainingProgress.PRINT)
+							: new ValueIterationAgent();
 				} else if (next.equals("pi")) {
 					System.out.println("X is pi agent.");
 					x = new PolicyIterationAgent();
@@ -731,11 +859,18 @@ public class Game {
 				} else if (next.equals("def")) {
 					System.out.println("X is defensive agent.");
 					x = new DefensiveAgent();
+				} else if (next.equals("rule")) {
+					System.out.println("X is rule agent.");
+					x = new RuleAgent();
 				} else if (next.equals("ql")) {
 					System.out.println("X is q learning agent.");
-					x = new QLearningAgent();
+					x = background ? BackgroundTrainedAgent.qLearning(TrainingProgress.PRINT) : new QLearningAgent();
+				} else if (next.equals("sp")) {
+					System.out.println("X is self-play agent.");
+					selfPlay = selfPlay == null ? trainSelfPlay() : selfPlay;
+					x = new Agent(selfPlay);
 				} else {
-					System.out.println("-x should be followed by the agent type: vi, pi, ql, random or human");
+					System.out.println("-x should be followed by the agent type: vi, pi, ql, sp, random, agg, def, rule or human");
 					return;
 
 				}
@@ -744,7 +879,7 @@ public class Game {
 				next = iter.next();
 
 				if (next == null || next.startsWith("-")) {
-					System.out.println("-o should be followed by the agent name e.g. random or human");
+					System.out.println("-o should be followed by the agent name: ql, sp, random, agg, def, rule or human");
 					return;
 				}
 				if (next.equals("vi")) {
@@ -767,11 +902,20 @@ public class Game {
 				} else if (next.equals("def")) {
 					System.out.println("O is defensive agent.");
 					o = new DefensiveAgent();
+				} else if (next.equals("rule")) {
+					System.out.println("O is rule agent.");
+					o = new RuleAgent();
 				} else if (next.equals("ql")) {
 					System.out.println("O is q learning agent.");
-					o = new QLearningAgent();
+					// trained to play X, from both starters, so mirrored to play O
+					o = background ? BackgroundTrainedAgent.qLearning(TrainingProgress.PRINT, true)
+							: new Agent(new MirroredPolicy(new QLearningAgent().getPolicy()));
+				} else if (next.equals("sp")) {
+					System.out.println("O is self-play agent.");
+					selfPlay = selfPlay == null ? trainSelfPlay() : selfPlay;
+					o = new Agent(selfPlay);
 				} else {
-					System.out.println("Error: -x should be followed by the agent type: vi, pi, random or human");
+					System.out.println("Error: -o should be followed by the agent type: ql, sp, random, agg, def, rule or human");
 					return;
 
 				}
@@ -790,6 +934,26 @@ public class Game {
 					return;
 				}
 				break;
+			case "-seed":
+				// already handled above
+				iter.next();
+				break;
+			case "-n":
+			case "-threads":
+				next = iter.hasNext() ? iter.next() : "";
+				try {
+					if (cur.equals("-n"))
+						games = Long.parseLong(next);
+					else
+						threads = Integer.parseInt(next);
+				} catch (NumberFormatException e) {
+					System.out.println("Error: " + cur + " should be followed by a number");
+					return;
+				}
+				break;
+			case "-quiet":
+				quiet = true;
+				break;
 
 			}
 
@@ -808,6 +972,22 @@ public class Game {
 			o = new RandomAgent();
 		}
 
+		if (games > 1 || quiet) {
+			// headless: no boards, just the results
+			MatchRunner runner;
+			try {
+				runner = new MatchRunner(MatchRunner.copiesOf(x), MatchRunner.copiesOf(o));
+			} catch (IllegalArgumentException e) {
+				System.out.println("Error: " + e.getMessage());
+				return;
+			}
+			if (whoseTurn != null && whoseTurn.equals("o"))
+				runner.setStarter('O');
+
+			System.out.println(runner.run(games, threads));
+			return;
+		}
+
 		Game g;
 		if (whoseTurn == null || whoseTurn.equals("x"))
 			g = new Game(x, o);
@@ -4,6 +4,7 @@ package ticTacToe;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 /**
  * A human agent that doesn't have a policy, instead asks the user to enter a move using a command line.
  * @author ae187
@@ -16,6 +17,11 @@ public class HumanAgent extends Agent {
 		
 	}
 
+	/**
+	 * one reader for the whole process: a reader per move could buffer input meant for the next move and lose it.
+	 */
+	private static final BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+
 	public Move getMove(Game g)
 	{
 		// show user possible moves.
@@ -23,39 +29,42 @@ public class HumanAgent extends Agent {
 		System.out.println("0|1|2\n" +
 				           "3|4|5\n" +
 				           "6|7|8");
-		System.out.print("Your move: ");
 		
 		// read in user input. If bad input is specified, allow user to try again. 
-		BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
-		int move=1;
-		try{
-			move = Integer.parseInt(br.readLine());
-			
-		} catch(IOException e){
-			e.printStackTrace();
-			System.exit(1);
-		} catch(NumberFormatException e){
-			System.out.println("Invalid move selection! You must enter an integer!");
-			return getMove(g);
-		}
-		
-		int x=move/3;
-		int y=move%3;
-		
-		if (x<0 || x>2 || y<0 || y>2)
-		{
-			System.out.println("Invalid number chosen. Choose again.");
-			return getMove(g);
-		}
-		
-		Move m=new Move(name, x, y);
-		if (!g.isLegal(m))
+		while (true)
 		{
-			System.out.println("Illegal move. Choose again.");
-			return getMove(g);
+			System.out.print("Your move: ");
+			String line=null;
+			try{
+				line=in.readLine();
+			} catch(IOException e){
+				throw new UncheckedIOException(e);
+			}
+			if (line==null)
+				throw new IllegalStateException("No more input: the game cannot go on");
+			
+			int move;
+			try{
+				move = Integer.parseInt(line.trim());
+			} catch(NumberFormatException e){
+				System.out.println("Invalid move selection! You must enter an integer!");
+				continue;
+			}
+			
+			if (move<0 || move>8)
+			{
+				System.out.println("Invalid number chosen. Choose again.");
+				continue;
+			}
+			
+			Move m=new Move(name, move/3, move%3);
+			if (!g.isLegal(m))
+			{
+				System.out.println("Illegal move. Choose again.");
+				continue;
+			}
+			return m;
 		}
-		return m;	
-		
 		
 	}
 
@@ -0,0 +1,109 @@
+package ticTacToe;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies, in nanoseconds, into buckets of about 12% width, so that
+ * percentiles such as the median and the 99th can be read off at any time
+ * without keeping every sample.
+ *
+ * Values below 8 have a bucket each; above that each power of two is split
+ * into 8 equal buckets. Recording is one atomic increment, with no locks and
+ * no allocation, so any number of threads can record at once.
+ *
+ */
+public final class LatencyHistogram {
+
+	private static final int BUCKETS = 61 * 8;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	static int bucketOf(long nanos) {
+		if (nanos < 8)
+			return (int) Math.max(0, nanos);
+
+		int e = 63 - Long.numberOfLeadingZeros(nanos);
+		return (e - 2) * 8 + (int) (nanos >>> (e - 3) & 7);
+	}
+
+	/**
+	 *
+	 * @param bucket
+	 * @return the largest value counted in {@code bucket}
+	 */
+	static long upperBoundOf(int bucket) {
+		if (bucket < 8)
+			return bucket;
+
+		int e = bucket / 8 + 2;
+		long low = (long) (8 + bucket % 8) << (e - 3);
+		return low + (1L << (e - 3)) - 1;
+	}
+
+	/**
+	 *
+	 * @param nanos a latency
+	 */
+	public void record(long nanos) {
+		counts.incrementAndGet(bucketOf(nanos));
+	}
+
+	/**
+	 *
+	 * @return the number of latencies recorded
+	 */
+	public long count() {
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			n += counts.get(i);
+
+		return n;
+	}
+
+	/**
+	 *
+	 * @param q between 0 and 1, e.g. 0.99
+	 * @return the latency, rounded up to its bucket, that a fraction {@code q} of
+	 *         the latencies recorded do not exceed; 0 if none were recorded
+	 */
+	public long percentile(double q) {
+		long[] snapshot = new long[BUCKETS];
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			n += snapshot[i] = counts.get(i);
+		if (n == 0)
+			return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(q * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank)
+				return upperBoundOf(i);
+		}
+		return upperBoundOf(BUCKETS - 1);
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			counts.set(i, 0);
+	}
+
+	/**
+	 *
+	 * @return e.g. "n=1000 p50=12.3us p99=80.1us p99.9=1.2ms"
+	 */
+	public String toString() {
+		return String.format("n=%d p50=%s p99=%s p99.9=%s", count(), format(percentile(0.5)), format(percentile(0.99)),
+				format(percentile(0.999)));
+	}
+
+	static String format(long nanos) {
+		if (nanos < 1000)
+			return nanos + "ns";
+		if (nanos < 1000000)
+			return String.format("%.1fus", nanos / 1e3);
+		return String.format("%.1fms", nanos / 1e6);
+	}
+
+}
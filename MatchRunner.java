@@ -0,0 +1,210 @@
+package ticTacToe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Plays many games between two kinds of agent without any console output, and
+ * counts the results.
+ *
+ * Games are split evenly between worker threads. Each worker has its own pair
+ * of agents, made by the factories given, and one {@link Game} that it resets
+ * between games. All agents are made up front on the calling thread, so a
+ * seeded run (see {@link Rng}) gives the same counts for a given number of
+ * threads.
+ *
+ */
+public class MatchRunner {
+
+	/**
+	 * The aggregated results of a run.
+	 */
+	public static class Result {
+		public final long games;
+		public final long xWins;
+		public final long oWins;
+		public final long draws;
+		public final double seconds;
+
+		Result(long xWins, long oWins, long draws, double seconds) {
+			this.games = xWins + oWins + draws;
+			this.xWins = xWins;
+			this.oWins = oWins;
+			this.draws = draws;
+			this.seconds = seconds;
+		}
+
+		public double gamesPerSecond() {
+			return games / seconds;
+		}
+
+		public String toString() {
+			double n = Math.max(1, games);
+			return String.format("%d games: X won %d (%.1f%%), O won %d (%.1f%%), draws %d (%.1f%%) in %.2fs, %.0f games/s",
+					games, xWins, 100 * xWins / n, oWins, 100 * oWins / n, draws, 100 * draws / n, seconds,
+					gamesPerSecond());
+		}
+	}
+
+	final Supplier<? extends Agent> xFactory;
+	final Supplier<? extends Agent> oFactory;
+
+	/**
+	 * 'X' or 'O', whoever starts every game
+	 */
+	char starter = 'X';
+
+	/**
+	 * if set, every game is logged here
+	 */
+	TranscriptWriter transcript = null;
+
+	/**
+	 *
+	 * @param x makes an X agent for each worker
+	 * @param o makes an O agent for each worker
+	 */
+	public MatchRunner(Supplier<? extends Agent> x, Supplier<? extends Agent> o) {
+		this.xFactory = x;
+		this.oFactory = o;
+	}
+
+	/**
+	 *
+	 * @param starter 'X' or 'O', whoever starts every game
+	 */
+	public void setStarter(char starter) {
+		if (starter != 'X' && starter != 'O')
+			throw new IllegalArgumentException("Argument should be either 'X' or 'O'");
+		this.starter = starter;
+	}
+
+	/**
+	 *
+	 * @param transcript where every game is logged, or null
+	 */
+	public void setTranscript(TranscriptWriter transcript) {
+		this.transcript = transcript;
+	}
+
+	/**
+	 * Plays {@code games} games.
+	 *
+	 * @param games
+	 * @param threads the number of worker threads
+	 * @return the results
+	 * @throws IllegalStateException if an agent plays an illegal move
+	 */
+	public Result run(long games, int threads) {
+		threads = (int) Math.max(1, Math.min(threads, games));
+		Agent[] xs = new Agent[threads];
+		Agent[] os = new Agent[threads];
+		for (int w = 0; w < threads; w++) {
+			xs[w] = xFactory.get();
+			os[w] = oFactory.get();
+		}
+
+		FlightEvents.MatchRun event = new FlightEvents.MatchRun();
+		event.begin();
+		long start = System.nanoTime();
+		long[] counts = new long[4];
+		if (threads == 1) {
+			counts = play(xs[0], os[0], games);
+		} else {
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			try {
+				List<Future<long[]>> futures = new ArrayList<Future<long[]>>();
+				for (int w = 0; w < threads; w++) {
+					Agent x = xs[w];
+					Agent o = os[w];
+					long n = games / threads + (w < games % threads ? 1 : 0);
+					futures.add(pool.submit(() -> play(x, o, n)));
+				}
+				for (Future<long[]> f : futures) {
+					long[] c = f.get();
+					for (int r = 0; r < 4; r++)
+						counts[r] += c[r];
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Match interrupted", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Match worker failed", e.getCause());
+			} finally {
+				pool.shutdown();
+			}
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		if (event.shouldCommit()) {
+			event.games = games;
+			event.threads = threads;
+			event.xWins = counts[Game.X_WON];
+			event.oWins = counts[Game.O_WON];
+			event.draws = counts[Game.DRAW];
+			event.commit();
+		}
+		return new Result(counts[Game.X_WON], counts[Game.O_WON], counts[Game.DRAW], seconds);
+	}
+
+	/**
+	 * Plays {@code n} games on one game object.
+	 *
+	 * @return the number of games per final state
+	 */
+	private long[] play(Agent x, Agent o, long n) {
+		long[] counts = new long[4];
+		Game g = new Game(x, o);
+		Agent first = starter == 'X' ? x : o;
+		try {
+			for (long i = 0; i < n; i++) {
+				g.reset(first);
+				counts[g.play(transcript)]++;
+			}
+		} catch (IllegalMoveException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+
+		return counts;
+	}
+
+	/**
+	 * Makes a factory for agents like {@code a}, for a run. Random, aggressive
+	 * and defensive agents are made anew, with their own generators; agents
+	 * playing a trained policy share it, since a trained policy only reads.
+	 *
+	 * @param a an agent, but not a {@link HumanAgent}. A
+	 *          {@link BackgroundTrainedAgent} is waited for until it has
+	 *          finished training.
+	 * @return the factory
+	 */
+	public static Supplier<Agent> copiesOf(Agent a) {
+		if (a instanceof HumanAgent)
+			throw new IllegalArgumentException("A human agent cannot play headless matches");
+		if (a instanceof RandomAgent)
+			return RandomAgent::new;
+		if (a instanceof AggressiveAgent)
+			return AggressiveAgent::new;
+		if (a instanceof DefensiveAgent)
+			return DefensiveAgent::new;
+
+		if (a instanceof BackgroundTrainedAgent) {
+			try {
+				((BackgroundTrainedAgent) a).awaitTrained(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for training", e);
+			}
+		}
+
+		Policy p = a.getPolicy();
+		return () -> new Agent(p);
+	}
+
+}
@@ -0,0 +1,308 @@
+package ticTacToe;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timers for the hot paths of the engine: game copies, hash
+ * computations, MDP transitions, environment steps, learner updates and so on,
+ * so that one can see what a training run or a match actually costs.
+ *
+ * Counters and timers are made once, by name, and kept in static fields where
+ * they are used, e.g.
+ * {@code static final Metrics.Counter COPIES = Metrics.counter("game.copies")}.
+ * Counting is a {@link LongAdder} increment, so it is cheap and safe from any
+ * number of threads. A timer measures a phase, such as a training run: its wall
+ * time and, where the JVM can tell, the bytes allocated by the thread running
+ * it.
+ *
+ * Metrics are on by default; set {@code ttt.metrics=false}, or call
+ * {@link #setEnabled(boolean)}, to turn all counting and timing into a single
+ * volatile read. Read them with {@link #snapshot()}, or have them printed
+ * periodically with {@link #startDump}.
+ *
+ */
+public final class Metrics {
+
+	private static volatile boolean enabled = !"false".equalsIgnoreCase(System.getProperty("ttt.metrics"));
+
+	private static final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+	private static final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+
+	private static ScheduledExecutorService dumper;
+
+	private Metrics() {
+	}
+
+	/**
+	 * A named count of events.
+	 */
+	public static final class Counter {
+		private final LongAdder count = new LongAdder();
+
+		public void increment() {
+			if (enabled)
+				count.increment();
+		}
+
+		public void add(long n) {
+			if (enabled)
+				count.add(n);
+		}
+
+		public long get() {
+			return count.sum();
+		}
+	}
+
+	/**
+	 * A named phase, timed every time it runs:
+	 * {@code Metrics.Phase p = TIMER.start(); try { ... } finally { p.close(); }}
+	 */
+	public static final class Timer {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder bytes = new LongAdder();
+
+		/**
+		 *
+		 * @return the phase now starting, to be closed when it ends
+		 */
+		public Phase start() {
+			return enabled ? new Phase(this) : Phase.NONE;
+		}
+	}
+
+	/**
+	 * One run of a timed phase.
+	 */
+	public static final class Phase implements AutoCloseable {
+		static final Phase NONE = new Phase(null);
+
+		private final Timer timer;
+		private final long startNanos;
+		private final long startBytes;
+
+		private Phase(Timer timer) {
+			this.timer = timer;
+			this.startNanos = timer == null ? 0 : System.nanoTime();
+			this.startBytes = timer == null ? 0 : allocatedBytes();
+		}
+
+		/**
+		 * Ends the phase and adds it to its timer.
+		 */
+		public void close() {
+			if (timer == null)
+				return;
+
+			timer.count.increment();
+			timer.nanos.add(System.nanoTime() - startNanos);
+			long bytes = allocatedBytes();
+			if (bytes >= 0 && startBytes >= 0)
+				timer.bytes.add(bytes - startBytes);
+		}
+	}
+
+	/**
+	 *
+	 * @return the bytes allocated by the current thread so far, or -1 if the JVM
+	 *         does not say
+	 */
+	static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean b = (com.sun.management.ThreadMXBean) bean;
+			if (b.isThreadAllocatedMemorySupported() && b.isThreadAllocatedMemoryEnabled())
+				return b.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 *
+	 * @param name e.g. "game.copies"
+	 * @return the counter with this name, made on first use
+	 */
+	public static Counter counter(String name) {
+		return counters.computeIfAbsent(name, n -> new Counter());
+	}
+
+	/**
+	 *
+	 * @param name e.g. "vi.train"
+	 * @return the timer with this name, made on first use
+	 */
+	public static Timer timer(String name) {
+		return timers.computeIfAbsent(name, n -> new Timer());
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Turns counting and timing on or off. Values counted so far are kept.
+	 *
+	 * @param on
+	 */
+	public static void setEnabled(boolean on) {
+		enabled = on;
+	}
+
+	/**
+	 * The values of every counter and timer at one moment.
+	 */
+	public static final class Snapshot {
+		public final long nanoTime;
+
+		/**
+		 * the count of every counter, by name
+		 */
+		public final Map<String, Long> counts;
+
+		/**
+		 * the number of runs, total nanoseconds and total bytes allocated of every
+		 * timer, by name
+		 */
+		public final Map<String, long[]> timings;
+
+		Snapshot(long nanoTime, Map<String, Long> counts, Map<String, long[]> timings) {
+			this.nanoTime = nanoTime;
+			this.counts = Collections.unmodifiableMap(counts);
+			this.timings = Collections.unmodifiableMap(timings);
+		}
+
+		/**
+		 *
+		 * @param earlier a snapshot taken before this one
+		 * @return what was counted and timed between {@code earlier} and this one
+		 */
+		public Snapshot since(Snapshot earlier) {
+			Map<String, Long> counts = new TreeMap<String, Long>();
+			for (Map.Entry<String, Long> e : this.counts.entrySet())
+				counts.put(e.getKey(), e.getValue() - earlier.counts.getOrDefault(e.getKey(), 0L));
+
+			Map<String, long[]> timings = new TreeMap<String, long[]>();
+			for (Map.Entry<String, long[]> e : this.timings.entrySet()) {
+				long[] then = earlier.timings.getOrDefault(e.getKey(), new long[3]);
+				long[] now = e.getValue();
+				timings.put(e.getKey(), new long[] { now[0] - then[0], now[1] - then[1], now[2] - then[2] });
+			}
+			return new Snapshot(nanoTime - earlier.nanoTime, counts, timings);
+		}
+
+		/**
+		 *
+		 * @param name
+		 * @return the count of that counter, or 0 if there is none
+		 */
+		public long count(String name) {
+			return counts.getOrDefault(name, 0L);
+		}
+
+		/**
+		 * Prints every non-zero counter and timer, one per line. For a snapshot made
+		 * by {@link #since}, counts are also given per second.
+		 *
+		 * @param perSecond whether to give rates, over the snapshot's time
+		 * @return the table
+		 */
+		public String format(boolean perSecond) {
+			StringBuilder sb = new StringBuilder();
+			double seconds = nanoTime / 1e9;
+			for (Map.Entry<String, Long> e : counts.entrySet()) {
+				if (e.getValue() == 0)
+					continue;
+				sb.append(String.format("%-24s %,16d", e.getKey(), e.getValue()));
+				if (perSecond)
+					sb.append(String.format(" %,14.0f/s", e.getValue() / seconds));
+				sb.append('\n');
+			}
+			for (Map.Entry<String, long[]> e : timings.entrySet()) {
+				long[] t = e.getValue();
+				if (t[0] == 0)
+					continue;
+				sb.append(String.format("%-24s %,16d runs %10.3fs %,16d bytes allocated\n", e.getKey(), t[0], t[1] / 1e9,
+						t[2]));
+			}
+			return sb.toString();
+		}
+
+		public String toString() {
+			return format(false);
+		}
+	}
+
+	/**
+	 *
+	 * @return the current values of every counter and timer
+	 */
+	public static Snapshot snapshot() {
+		Map<String, Long> counts = new TreeMap<String, Long>();
+		for (Map.Entry<String, Counter> e : counters.entrySet())
+			counts.put(e.getKey(), e.getValue().get());
+
+		Map<String, long[]> timings = new TreeMap<String, long[]>();
+		for (Map.Entry<String, Timer> e : timers.entrySet()) {
+			Timer t = e.getValue();
+			timings.put(e.getKey(), new long[] { t.count.sum(), t.nanos.sum(), t.bytes.sum() });
+		}
+		return new Snapshot(System.nanoTime(), counts, timings);
+	}
+
+	/**
+	 * Prints what was counted in every period, with rates per second, until
+	 * {@link #stopDump()} is called. Periods in which nothing was counted are not
+	 * printed.
+	 *
+	 * @param period
+	 * @param unit
+	 * @param out    where to print, e.g. System.out
+	 */
+	public static synchronized void startDump(long period, TimeUnit unit, PrintStream out) {
+		stopDump();
+		dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "metrics-dump");
+			t.setDaemon(true);
+			return t;
+		});
+		Snapshot[] last = { snapshot() };
+		dumper.scheduleAtFixedRate(() -> {
+			Snapshot now = snapshot();
+			String table = now.since(last[0]).format(true);
+			last[0] = now;
+			if (!table.isEmpty())
+				out.print("--- metrics ---\n" + table);
+		}, period, period, unit);
+	}
+
+	public static synchronized void stopDump() {
+		if (dumper != null) {
+			dumper.shutdownNow();
+			dumper = null;
+		}
+	}
+
+	/**
+	 * Trains a value iteration agent, bypassing the policy cache, and prints what
+	 * it cost.
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		System.setProperty("ttt.cache", "false");
+		Snapshot before = snapshot();
+		new ValueIterationAgent();
+		System.out.print(snapshot().since(before).format(true));
+	}
+
+}
@@ -0,0 +1,42 @@
+package ticTacToe;
+
+/**
+ * Plays a policy that was trained to play X, such as a value iteration policy,
+ * as either side. When it is O's turn the marks on the board are swapped, the
+ * policy picks X's move on the swapped board, and that cell is played for O.
+ *
+ * Every position reachable with O to move swaps to one reachable with X to
+ * move for the other starter, so the policy must have moves for X in games
+ * started by either player: value and policy iteration policies, which cover
+ * every reachable position, or a Q-learning policy trained from both starters
+ * (see {@link TTTEnvironment#setBothStarters}). A policy only trained with X
+ * starting plays O badly.
+ *
+ */
+public class MirroredPolicy extends Policy {
+
+	final Policy xPolicy;
+
+	/**
+	 *
+	 * @param xPolicy a policy for X
+	 */
+	public MirroredPolicy(Policy xPolicy) {
+		this.xPolicy = xPolicy;
+	}
+
+	@Override
+	public Move getMove(Game g) {
+		if (g.whoseTurn.getName() == 'X')
+			return xPolicy.getMove(g);
+
+		Move m = xPolicy.getMove(Position.of(g).swapped().toGame());
+		return m == null ? null : new Move(g.whoseTurn, m.x, m.y);
+	}
+
+	@Override
+	public int getCell(Position p) {
+		return xPolicy.getCell(p.isXToMove() ? p : p.swapped());
+	}
+
+}
@@ -0,0 +1,108 @@
+package ticTacToe;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The trained policies held by this process, shared by every agent trained
+ * with the same parameters, so that N agents cost one training run and one
+ * copy of the tables.
+ *
+ * Models are keyed by their {@link PolicyCache} file, whose name is made of the
+ * algorithm and every parameter that affects the result: MDP rewards, discount
+ * factor, seed and so on. The registry sits in front of the cache: a model
+ * missing from the registry is loaded from the cache, or trained and cached,
+ * exactly once even if several threads ask for it at the same time.
+ *
+ * Registered policies are shared between agents and threads, and so must not
+ * be changed.
+ *
+ */
+public final class ModelRegistry {
+
+	private static final ConcurrentHashMap<Path, CompletableFuture<Policy>> models = new ConcurrentHashMap<Path, CompletableFuture<Policy>>();
+
+	private ModelRegistry() {
+	}
+
+	private static Path keyOf(Path cacheFile) {
+		return cacheFile.toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Returns the model for {@code cacheFile}: the registered one, else the
+	 * cached one, else one trained now. Threads asking for a model that is being
+	 * loaded or trained wait for it.
+	 *
+	 * @param cacheFile the {@link PolicyCache} file of the model
+	 * @param train     trains and returns the policy
+	 * @return the shared policy
+	 */
+	public static Policy getOrTrain(Path cacheFile, Supplier<Policy> train) {
+		Path key = keyOf(cacheFile);
+		CompletableFuture<Policy> mine = new CompletableFuture<Policy>();
+		CompletableFuture<Policy> existing = models.putIfAbsent(key, mine);
+		if (existing != null) {
+			try {
+				return existing.join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+				throw e;
+			}
+		}
+
+		try {
+			Policy p = PolicyCache.getOrTrain(cacheFile, train);
+			mine.complete(p);
+			return p;
+		} catch (RuntimeException | Error e) {
+			// forget the failure, so that the next caller tries again
+			models.remove(key, mine);
+			mine.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	/**
+	 *
+	 * @param cacheFile the {@link PolicyCache} file of a model
+	 * @return the registered model, or null if it is not registered or still
+	 *         being trained
+	 */
+	public static Policy getIfPresent(Path cacheFile) {
+		CompletableFuture<Policy> f = models.get(keyOf(cacheFile));
+		return f != null && f.isDone() && !f.isCompletedExceptionally() ? f.join() : null;
+	}
+
+	/**
+	 * Registers a model trained elsewhere, replacing any registered under the
+	 * same file.
+	 *
+	 * @param cacheFile the {@link PolicyCache} file of the model
+	 * @param p         the trained policy
+	 */
+	public static void put(Path cacheFile, Policy p) {
+		models.put(keyOf(cacheFile), CompletableFuture.completedFuture(p));
+	}
+
+	/**
+	 *
+	 * @return the number of models registered or being trained
+	 */
+	public static int size() {
+		return models.size();
+	}
+
+	/**
+	 * Forgets every model, e.g. to time training again. Agents keep the models
+	 * they already have.
+	 */
+	public static void clear() {
+		models.clear();
+	}
+
+}
@@ -14,13 +14,25 @@ public class Move {
 	public int x;
 	public int y;
 	
+	/**
+	 * the agents of moves made by name, shared so that such moves do not each create (and name) an agent of their own
+	 */
+	private static final Agent X=named('X');
+	private static final Agent O=named('O');
+	
+	private static Agent named(char name)
+	{
+		Agent a=new Agent();
+		a.setName(name);
+		return a;
+	}
+	
 	public Move(char who, int x, int y)
 	{
 		if (who!='X' && who!='O')
 			throw new IllegalArgumentException("Can only be a move by X or by O");
 		
-		this.who=new Agent();
-		this.who.setName(who);
+		this.who=who=='X'?X:O;
 		
 		if (x<0 || x>2 || y<0 || y>2)
 			throw new IllegalArgumentException("Invalid x or y coordinates");
@@ -0,0 +1,281 @@
+package ticTacToe;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.SplittableRandom;
+
+/**
+ * A load-testing client for {@link MoveServer}: opens many connections at once
+ * from a single thread, and on each plays a number of games of random legal
+ * moves, one request at a time.
+ *
+ * Each connection alternates its side from game to game, and who starts every
+ * two games, so every combination is played equally often. Results are counted
+ * from the client's point of view; against a perfect policy the client should
+ * never win.
+ *
+ */
+public class MoveClient {
+
+	/**
+	 * The aggregated results of a run.
+	 */
+	public static class Result {
+		public final long games;
+		public final long clientWins;
+		public final long serverWins;
+		public final long draws;
+		public final long errors;
+		public final double seconds;
+
+		Result(long clientWins, long serverWins, long draws, long errors, double seconds) {
+			this.games = clientWins + serverWins + draws;
+			this.clientWins = clientWins;
+			this.serverWins = serverWins;
+			this.draws = draws;
+			this.errors = errors;
+			this.seconds = seconds;
+		}
+
+		public double gamesPerSecond() {
+			return games / seconds;
+		}
+
+		public String toString() {
+			return String.format("%d games: client won %d, server won %d, draws %d, %d errors in %.2fs, %.0f games/s",
+					games, clientWins, serverWins, draws, errors, seconds, gamesPerSecond());
+		}
+	}
+
+	/**
+	 * The state of one connection.
+	 */
+	private static final class Connection {
+		final ByteBuffer in = ByteBuffer.allocate(MoveServer.MAX_LINE);
+		final ByteBuffer out = ByteBuffer.allocate(MoveServer.MAX_LINE);
+		final SplittableRandom random;
+		int gamesLeft;
+		int game;
+		Position position;
+		boolean clientIsX;
+
+		Connection(SplittableRandom random, int games) {
+			this.random = random;
+			this.gamesLeft = games;
+		}
+	}
+
+	final InetSocketAddress server;
+
+	long clientWins;
+	long serverWins;
+	long draws;
+	long errors;
+
+	/**
+	 *
+	 * @param server the address of a {@link MoveServer}
+	 */
+	public MoveClient(InetSocketAddress server) {
+		this.server = server;
+	}
+
+	/**
+	 * Plays {@code gamesPerConnection} games on each of {@code connections}
+	 * connections at once, and returns when all are done.
+	 *
+	 * @param connections
+	 * @param gamesPerConnection
+	 * @return the results
+	 * @throws IOException if a connection cannot be made
+	 */
+	public Result run(int connections, int gamesPerConnection) throws IOException {
+		clientWins = serverWins = draws = errors = 0;
+		long start = System.nanoTime();
+		try (Selector selector = Selector.open()) {
+			for (int i = 0; i < connections; i++) {
+				SocketChannel ch = SocketChannel.open();
+				ch.configureBlocking(false);
+				ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				Connection c = new Connection(Rng.split(), gamesPerConnection);
+				if (ch.connect(server)) {
+					SelectionKey key = ch.register(selector, 0, c);
+					newGame(key, c);
+				} else
+					ch.register(selector, SelectionKey.OP_CONNECT, c);
+			}
+
+			int open = connections;
+			while (open > 0) {
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					Connection c = (Connection) key.attachment();
+					SocketChannel ch = (SocketChannel) key.channel();
+					try {
+						if (key.isConnectable()) {
+							ch.finishConnect();
+							newGame(key, c);
+						} else if (key.isWritable())
+							send(key, c);
+						else if (key.isReadable() && !receive(key, c)) {
+							ch.close();
+							open--;
+						}
+					} catch (IOException e) {
+						errors++;
+						ch.close();
+						open--;
+					}
+				}
+			}
+		}
+
+		return new Result(clientWins, serverWins, draws, errors, (System.nanoTime() - start) / 1e9);
+	}
+
+	private void newGame(SelectionKey key, Connection c) throws IOException {
+		c.clientIsX = c.game % 2 == 0;
+		boolean xStarts = c.game / 2 % 2 == 0;
+		c.position = xStarts ? Position.X_FIRST : Position.O_FIRST;
+		c.game++;
+		c.out.put((byte) 'N').put((byte) 'E').put((byte) 'W').put((byte) ' ').put((byte) (c.clientIsX ? 'X' : 'O'))
+				.put((byte) ' ').put((byte) (xStarts ? 'X' : 'O')).put((byte) '\n');
+		send(key, c);
+	}
+
+	private void send(SelectionKey key, Connection c) throws IOException {
+		c.out.flip();
+		((SocketChannel) key.channel()).write(c.out);
+		boolean drained = !c.out.hasRemaining();
+		c.out.compact();
+		key.interestOps(drained ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+	}
+
+	/**
+	 * Reads the reply to the last request, if it has all arrived, and sends the
+	 * next request.
+	 *
+	 * @return false once the connection is finished with
+	 */
+	private boolean receive(SelectionKey key, Connection c) throws IOException {
+		if (((SocketChannel) key.channel()).read(c.in) < 0) {
+			errors++;
+			return false;
+		}
+		byte[] b = c.in.array();
+		int end = c.in.position();
+		if (end == 0 || b[end - 1] != '\n')
+			return true; // one request at a time, so the reply ends the buffer
+
+		c.in.clear();
+		if (c.gamesLeft == 0) // the reply to QUIT
+			return false;
+		if (end != 7 || b[0] != 'O' || b[1] != 'K') {
+			errors++;
+			return false;
+		}
+
+		if (b[3] != '-')
+			c.position = c.position.play(b[3] - '0');
+		if (b[5] != '-') {
+			if (b[5] == 'D')
+				draws++;
+			else if ((b[5] == 'X') == c.clientIsX)
+				clientWins++;
+			else
+				serverWins++;
+
+			if (--c.gamesLeft == 0) {
+				c.out.put((byte) 'Q').put((byte) 'U').put((byte) 'I').put((byte) 'T').put((byte) '\n');
+				send(key, c);
+			} else
+				newGame(key, c);
+			return true;
+		}
+
+		int cell = EpsilonGreedyPolicy.randomCell(c.position.legalMoves(), c.random);
+		c.position = c.position.play(cell);
+		c.out.put((byte) 'M').put((byte) 'O').put((byte) 'V').put((byte) 'E').put((byte) ' ').put((byte) ('0' + cell))
+				.put((byte) '\n');
+		send(key, c);
+		return true;
+	}
+
+	/**
+	 * Runs a load test:
+	 * {@code [-host <name>] [-port <n>] [-connections <n>] [-games <per connection>] [-seed <long>] [-policy vi|pi|ql|rule]}.
+	 * Without a port, a server playing {@code -policy}, by default value
+	 * iteration, is started in this process, on the loopback interface.
+	 *
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		String host = null;
+		int port = -1;
+		int connections = 1000;
+		int games = 100;
+		String policy = "vi";
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "-host":
+				host = args[i + 1];
+				break;
+			case "-port":
+				port = Integer.parseInt(args[i + 1]);
+				break;
+			case "-connections":
+				connections = Integer.parseInt(args[i + 1]);
+				break;
+			case "-games":
+				games = Integer.parseInt(args[i + 1]);
+				break;
+			case "-seed":
+				Rng.setSeed(Long.parseLong(args[i + 1]));
+				break;
+			case "-policy":
+				policy = args[i + 1];
+				break;
+			default:
+				System.out.println("Unknown option " + args[i]);
+				return;
+			}
+		}
+
+		MoveServer local = null;
+		if (port < 0) {
+			local = new MoveServer(MoveServer.policyFor(policy), new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			port = local.getPort();
+			MoveServer s = local;
+			Thread t = new Thread(() -> {
+				try {
+					s.run();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}, "move-server");
+			t.setDaemon(true);
+			t.start();
+		}
+
+		InetSocketAddress address = host == null ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+				: new InetSocketAddress(host, port);
+		try {
+			System.out.println(new MoveClient(address).run(connections, games));
+		} finally {
+			if (local != null)
+				local.close();
+		}
+	}
+
+}
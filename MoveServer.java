@@ -0,0 +1,417 @@
+package ticTacToe;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * Hosts games against a trained policy for remote players, over a small line
+ * protocol on TCP. One thread and one {@link Selector} serve every
+ * connection, so a single process can host tens of thousands of games at once;
+ * each connection costs a few hundred bytes and no thread.
+ *
+ * Every request is one ASCII line, and gets exactly one reply line:
+ *
+ * <pre>
+ * NEW &lt;side&gt; &lt;starter&gt;   start a game, the client playing side X or O; X or O starts
+ * MOVE &lt;cell&gt;            play cell 3*x+y, 0 to 8
+ * QUIT                   close the connection
+ *
+ * OK &lt;cell&gt; &lt;result&gt;      the server's move (or - if it did not move) and the
+ *                        result so far: - while the game goes on, else X, O or D
+ * ERR &lt;reason&gt;           the request was refused; the game, if any, goes on
+ * </pre>
+ *
+ * So a client that starts sends {@code NEW X X}, gets {@code OK - -} and then
+ * sends its first move; a client that does not start gets the server's opening
+ * move straight away. A connection plays one game at a time, any number of
+ * games in a row. Clients may send several requests without waiting; replies
+ * come back in order, and a client that does not read its replies is not read
+ * from until it does.
+ *
+ * The server's moves come from {@link Policy#getCell(Position)}, so the policy
+ * must have a move for either side, e.g. a {@link MirroredPolicy}.
+ *
+ */
+public class MoveServer implements Closeable {
+
+	/**
+	 * the longest request accepted, newline included
+	 */
+	static final int MAX_LINE = 64;
+
+	/**
+	 * room kept free in a connection's output buffer before taking another
+	 * request: the longest reply
+	 */
+	static final int MAX_REPLY = 32;
+
+	private static final byte[] ERR_SYNTAX = reply("ERR bad request");
+	private static final byte[] ERR_NO_GAME = reply("ERR no game");
+	private static final byte[] ERR_NOT_YOUR_TURN = reply("ERR not your turn");
+	private static final byte[] ERR_ILLEGAL = reply("ERR illegal move");
+	private static final byte[] ERR_TOO_LONG = reply("ERR line too long");
+	private static final byte[] OK_NO_MOVE = reply("OK - -");
+
+	/**
+	 * The state of one connection. Only the selector thread touches it.
+	 */
+	private static final class Session {
+		final ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+		final ByteBuffer out = ByteBuffer.allocate(4 * MAX_REPLY);
+
+		/**
+		 * the game in progress, or null
+		 */
+		Position position;
+		boolean clientIsX;
+		boolean quit;
+	}
+
+	private final Policy policy;
+	private final Selector selector;
+	private final ServerSocketChannel server;
+	private volatile boolean open = true;
+
+	private volatile long connections;
+	private volatile long games;
+	private volatile long moves;
+
+	/**
+	 * Opens the server socket; call {@link #run()} to start serving.
+	 *
+	 * @param policy plays the server's side, see {@link Policy#getCell(Position)}
+	 * @param port   the port to listen on, or 0 for any free port
+	 * @throws IOException
+	 */
+	public MoveServer(Policy policy, int port) throws IOException {
+		this(policy, new InetSocketAddress(port));
+	}
+
+	public MoveServer(Policy policy, InetSocketAddress address) throws IOException {
+		this.policy = policy;
+		this.selector = Selector.open();
+		this.server = ServerSocketChannel.open();
+		server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		server.bind(address, 4096);
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+	private static byte[] reply(String line) {
+		return (line + "\n").getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 *
+	 * @return the port the server listens on
+	 */
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	 *
+	 * @return the number of connections open now
+	 */
+	public long getConnections() {
+		return connections;
+	}
+
+	/**
+	 *
+	 * @return the number of games played to the end so far
+	 */
+	public long getGames() {
+		return games;
+	}
+
+	/**
+	 *
+	 * @return the number of moves played by the server so far
+	 */
+	public long getMoves() {
+		return moves;
+	}
+
+	/**
+	 * Serves connections on the calling thread until {@link #close()} is called.
+	 *
+	 * @throws IOException if the selector fails; failures of single connections
+	 *                     just close them
+	 */
+	public void run() throws IOException {
+		try {
+			while (open) {
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid())
+						continue;
+
+					if (key.isAcceptable()) {
+						accept();
+						continue;
+					}
+
+					try {
+						Session s = (Session) key.attachment();
+						if (key.isReadable() && ((SocketChannel) key.channel()).read(s.in) < 0) {
+							drop(key);
+							continue;
+						}
+						serve(key, s);
+					} catch (IOException e) {
+						drop(key);
+					}
+				}
+			}
+		} finally {
+			for (SelectionKey key : selector.keys())
+				key.channel().close();
+			selector.close();
+		}
+	}
+
+	/**
+	 * Stops {@link #run()} and closes every connection.
+	 */
+	public void close() {
+		open = false;
+		selector.wakeup();
+	}
+
+	private void accept() throws IOException {
+		SocketChannel ch;
+		while ((ch = server.accept()) != null) {
+			ch.configureBlocking(false);
+			ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			ch.register(selector, SelectionKey.OP_READ, new Session());
+			connections++;
+		}
+	}
+
+	private void drop(SelectionKey key) throws IOException {
+		key.cancel();
+		key.channel().close();
+		connections--;
+	}
+
+	/**
+	 * Answers every complete request read so far, as far as the output buffer
+	 * allows, and writes the replies.
+	 */
+	private void serve(SelectionKey key, Session s) throws IOException {
+		boolean more;
+		boolean drained;
+		do {
+			more = handleLines(s);
+			s.out.flip();
+			((SocketChannel) key.channel()).write(s.out);
+			drained = !s.out.hasRemaining();
+			s.out.compact();
+		} while (more && drained);
+
+		if (drained && s.quit) {
+			drop(key);
+			return;
+		}
+		// while replies are queued, stop reading: the client has to catch up
+		key.interestOps(drained ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+	}
+
+	/**
+	 *
+	 * @return true if requests are left because the output buffer is full
+	 */
+	private boolean handleLines(Session s) {
+		byte[] b = s.in.array();
+		int start = 0;
+		int end = s.in.position();
+		for (int i = 0; i < end && !s.quit; i++) {
+			if (b[i] != '\n')
+				continue;
+
+			if (s.out.remaining() < MAX_REPLY) {
+				compact(s.in, start);
+				return true;
+			}
+			int len = i > start && b[i - 1] == '\r' ? i - 1 - start : i - start;
+			handle(s, b, start, len);
+			start = i + 1;
+		}
+		compact(s.in, start);
+
+		if (!s.in.hasRemaining() && !s.quit) {
+			if (s.out.remaining() < MAX_REPLY)
+				return true;
+			s.out.put(ERR_TOO_LONG);
+			s.quit = true;
+		}
+		return false;
+	}
+
+	private static void compact(ByteBuffer in, int consumed) {
+		in.flip().position(consumed);
+		in.compact();
+	}
+
+	private void handle(Session s, byte[] b, int off, int len) {
+		if (len == 7 && startsWith(b, off, "NEW ") && b[off + 5] == ' ' && isSide(b[off + 4]) && isSide(b[off + 6])) {
+			s.clientIsX = b[off + 4] == 'X';
+			s.position = b[off + 6] == 'X' ? Position.X_FIRST : Position.O_FIRST;
+			if (s.position.isXToMove() == s.clientIsX)
+				s.out.put(OK_NO_MOVE);
+			else
+				replyWithMove(s);
+		} else if (len == 6 && startsWith(b, off, "MOVE ") && b[off + 5] >= '0' && b[off + 5] <= '8') {
+			int cell = b[off + 5] - '0';
+			if (s.position == null)
+				s.out.put(ERR_NO_GAME);
+			else if (s.position.isXToMove() != s.clientIsX)
+				s.out.put(ERR_NOT_YOUR_TURN);
+			else if ((s.position.legalMoves() >> cell & 1) == 0)
+				s.out.put(ERR_ILLEGAL);
+			else {
+				s.position = s.position.play(cell);
+				replyWithMove(s);
+			}
+		} else if (len == 4 && startsWith(b, off, "QUIT")) {
+			s.out.put(OK_NO_MOVE);
+			s.quit = true;
+		} else
+			s.out.put(ERR_SYNTAX);
+	}
+
+	/**
+	 * Plays the server's move, unless the client's move ended the game, and
+	 * replies with it.
+	 */
+	private void replyWithMove(Session s) {
+		byte cell = '-';
+		if (!s.position.isTerminal()) {
+			int c = policy.getCell(s.position);
+			if (c < 0) // not expected of a trained policy; play the first free cell
+				c = Integer.numberOfTrailingZeros(s.position.legalMoves());
+			s.position = s.position.play(c);
+			cell = (byte) ('0' + c);
+			moves++;
+		}
+
+		byte result = '-';
+		switch (s.position.state()) {
+		case Game.X_WON:
+			result = 'X';
+			break;
+		case Game.O_WON:
+			result = 'O';
+			break;
+		case Game.DRAW:
+			result = 'D';
+			break;
+		}
+		if (result != '-') {
+			s.position = null;
+			games++;
+		}
+
+		s.out.put((byte) 'O').put((byte) 'K').put((byte) ' ').put(cell).put((byte) ' ').put(result).put((byte) '\n');
+	}
+
+	private static boolean startsWith(byte[] b, int off, String prefix) {
+		for (int i = 0; i < prefix.length(); i++)
+			if (b[off + i] != prefix.charAt(i))
+				return false;
+
+		return true;
+	}
+
+	private static boolean isSide(byte c) {
+		return c == 'X' || c == 'O';
+	}
+
+	/**
+	 * Makes the policy the server plays with.
+	 *
+	 * @param name vi, pi, ql or rule
+	 * @return the trained policy, or the rules of {@link RulePolicy}, able to
+	 *         play either side. A trained policy is mirrored to play O (see
+	 *         {@link MirroredPolicy}), so it must cover games started by either
+	 *         player. The Q-learning policy does: the default
+	 *         {@link QLearningAgent#QLearningAgent()} trains from both starters.
+	 *         Its moves cannot be checked for this, since a Q-learning policy has
+	 *         a move in every position, trained or not.
+	 */
+	static Policy policyFor(String name) {
+		switch (name) {
+		case "vi":
+			return new MirroredPolicy(new ValueIterationAgent().getPolicy());
+		case "pi":
+			return new MirroredPolicy(new PolicyIterationAgent().getPolicy());
+		case "ql":
+			return new MirroredPolicy(new QLearningAgent().getPolicy());
+		case "rule":
+			return new RulePolicy();
+		default:
+			throw new IllegalArgumentException("Unknown policy " + name + ", expected vi, pi, ql or rule");
+		}
+	}
+
+	/**
+	 * Runs a server until the process is killed:
+	 * {@code [-port <n>] [-policy vi|pi|ql|rule]}. Prints how many games were
+	 * played every ten seconds.
+	 *
+	 * @param args
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int port = 4242;
+		String policy = "vi";
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "-port":
+				port = Integer.parseInt(args[i + 1]);
+				break;
+			case "-policy":
+				policy = args[i + 1];
+				break;
+			default:
+				System.out.println("Unknown option " + args[i]);
+				return;
+			}
+		}
+
+		MoveServer server = new MoveServer(policyFor(policy), port);
+		Thread t = new Thread(() -> {
+			try {
+				server.run();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}, "move-server");
+		t.start();
+		System.out.println("Serving " + policy + " on port " + server.getPort());
+
+		long games = 0;
+		while (t.isAlive()) {
+			t.join(10000);
+			if (server.getGames() != games) {
+				games = server.getGames();
+				System.out.println(server.getConnections() + " connections, " + games + " games played");
+			}
+		}
+	}
+
+}
@@ -0,0 +1,72 @@
+package ticTacToe;
+
+/**
+ * A model of how an opponent moves, learned from the moves logged in game
+ * transcripts (see {@link TranscriptAnalytics}). Given to a {@link TTTMDP} it
+ * replaces the assumption that the opponent plays uniformly at random.
+ *
+ * The probability of a move is its count in the state, smoothed with a
+ * pseudo-count {@link #prior} for every legal move, so states that were never
+ * seen fall back to the uniform opponent.
+ *
+ */
+public class OpponentModel {
+
+	/**
+	 * the number of times each move was played, at {@code hash*9+cell}
+	 */
+	private final long[] counts;
+
+	/**
+	 * the pseudo-count added to every legal move
+	 */
+	private final double prior;
+
+	/**
+	 *
+	 * @param moveCounts the number of times each move was played in each state,
+	 *                   at {@code hash*9+cell}; not copied
+	 * @param prior      the pseudo-count added to every legal move, greater than 0
+	 */
+	public OpponentModel(long[] moveCounts, double prior) {
+		if (moveCounts.length != QTable.NUM_STATES * 9)
+			throw new IllegalArgumentException("There should be a count for every move in every game hash");
+		if (prior <= 0)
+			throw new IllegalArgumentException("The prior should be greater than 0");
+
+		this.counts = moveCounts;
+		this.prior = prior;
+	}
+
+	/**
+	 *
+	 * @param g    an ongoing game
+	 * @param cell a legal move {@code 3*x+y} in {@code g}
+	 * @return the probability that the player to move in {@code g} plays
+	 *         {@code cell}
+	 */
+	public double probability(Game g, int cell) {
+		int base = g.hashCode() * 9;
+		int legal = g.legalMoveMask();
+		double total = 0;
+		for (int m = legal; m != 0; m &= m - 1)
+			total += counts[base + Integer.numberOfTrailingZeros(m)] + prior;
+
+		return (counts[base + cell] + prior) / total;
+	}
+
+	/**
+	 *
+	 * @param g
+	 * @return the number of logged moves in {@code g}
+	 */
+	public long observations(Game g) {
+		int base = g.hashCode() * 9;
+		long n = 0;
+		for (int cell = 0; cell < 9; cell++)
+			n += counts[base + cell];
+
+		return n;
+	}
+
+}
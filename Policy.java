@@ -1,6 +1,11 @@
 package ticTacToe;
 
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 
 /**
@@ -15,6 +20,11 @@ public class Policy {
 	 */
 	HashMap<Game, Move> policy=new HashMap<Game, Move>();
 	
+	/**
+	 * if this policy was loaded from a file, the memory-mapped moves (one byte per game hash, see {@link PolicyFile}).
+	 */
+	ByteBuffer moves=null;
+	
 	/**
 	 * Create policy according to this map
 	 * @param policy
@@ -35,6 +45,15 @@ public class Policy {
 	 */
 	public Move getMove(Game g) {
 		
+		if (moves!=null)
+		{
+			byte cell=moves.get(g.hashCode());
+			if (cell==PolicyFile.NO_MOVE)
+				return null;
+			
+			return new Move(g.whoseTurn, cell/3, cell%3);
+		}
+		
 		if (policy.containsKey(g))
 			return policy.get(g);
 		
@@ -44,18 +63,58 @@ public class Policy {
 	}
 	
 	/**
-	 * loads policy from file. One possible format for storing a policy is as a sequence of lines where each line
-	 * specifies the action/move determined by the policy in a particular game state. The game states should not
-	 * explicitly stored, only their hashes are stored. The {@link Game} object itself can be constructed using the 
-	 * {@link Game#inverseHash} method.
+	 * Looks up the move in a position without building a {@link Game}. A policy
+	 * loaded from a file or produced by a learning agent is never changed after
+	 * it is made, so this can be called from any number of threads at once.
+	 *
+	 * @param p
+	 * @return the cell {@code 3*x+y} to play in {@code p}, or -1 if the policy
+	 *         has no move there
+	 */
+	public int getCell(Position p) {
+		if (moves != null) {
+			byte cell = moves.get(p.hash());
+			return cell == PolicyFile.NO_MOVE ? -1 : cell;
+		}
+
+		Move m = getMove(p.toGame());
+		return m == null ? -1 : 3 * m.x + m.y;
+	}
+
+	/**
+	 * loads policy from file. The file is in the binary format of {@link PolicyFile}: one byte per game hash 
+	 * holding the move in that game. The game states are not explicitly stored, only their hashes. 
+	 * The file is memory-mapped rather than read, so loading is almost free and uses no heap for the moves.
 	 *  
 	 * @param file
+	 * @throws UncheckedIOException if the file cannot be read or is not a policy file
 	 */
 	public Policy(String file)
 	{
-		/* implement this constructor to load a stored policy from file. */
+		try {
+			this.moves=PolicyFile.map(Paths.get(file));
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException("Could not load policy from "+file, e);
+		}
 		
 	}
+	
+	/**
+	 * Stores this policy in {@code file}, in the format read by {@link #Policy(String)}.
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeToFile(String file) throws IOException
+	{
+		writeToFile(Paths.get(file));
+	}
+	
+	public void writeToFile(Path file) throws IOException
+	{
+		PolicyFile.write(file, this);
+	}
 
 	
 	
@@ -0,0 +1,137 @@
+package ticTacToe;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.Supplier;
+
+/**
+ * A cache of trained policies on disk, so that agents which train in their
+ * constructors only train once per set of parameters.
+ *
+ * A trained policy is stored as a {@link PolicyFile} named after the algorithm,
+ * the version of the training code ({@link #TRAINING_VERSION}) and every
+ * parameter that affects the result, e.g.
+ * {@code vi_v1_0.9_10.0_-50.0_-1.0_0.0_10.pol}. Policies are stored directly
+ * under the project folder by default; set the {@code ttt.cache.dir} property
+ * to use another directory, made on first use, or {@code ttt.cache=false} to
+ * always train (once per process: see {@link ModelRegistry}).
+ *
+ * A cached policy is memory-mapped (see {@link Policy#Policy(String)}), so a
+ * cache hit costs a file open and a header check.
+ *
+ */
+public class PolicyCache {
+
+	/**
+	 * Part of every cache key. Bump it whenever a change to training, or to the
+	 * states trained on, changes the policies trained with the same parameters,
+	 * so that policies cached by an older build are trained again rather than
+	 * served.
+	 */
+	static final int TRAINING_VERSION = 1;
+
+	private PolicyCache() {
+	}
+
+	public static boolean isEnabled() {
+		return !"false".equalsIgnoreCase(System.getProperty("ttt.cache"));
+	}
+
+	/**
+	 *
+	 * @param algorithm a short name for the training algorithm, e.g. "vi"
+	 * @param params    every parameter that affects the trained policy
+	 * @return the cache file for this algorithm and these parameters, in this
+	 *         version of the training code
+	 */
+	public static Path fileFor(String algorithm, Object... params) {
+		StringBuilder name = new StringBuilder(algorithm).append("_v").append(TRAINING_VERSION);
+		for (Object p : params)
+			name.append('_').append(p);
+
+		String safe = name.toString().replaceAll("[^A-Za-z0-9._-]", "-");
+		return Paths.get(System.getProperty("ttt.cache.dir", "."), safe + ".pol");
+	}
+
+	/**
+	 *
+	 * @return the seed as a cache key parameter: the seed if one was set, since
+	 *         then the run is meant to be reproducible, and "any" otherwise
+	 */
+	public static String seedKey() {
+		return Rng.isSeeded() ? "seed" + Rng.getSeed() : "any";
+	}
+
+	/**
+	 *
+	 * @param file
+	 * @return the policy cached in {@code file}, or null if it is missing or
+	 *         unreadable
+	 */
+	public static Policy load(Path file) {
+		if (!isEnabled() || !Files.isRegularFile(file))
+			return null;
+
+		try {
+			return new Policy(file.toString());
+		} catch (UncheckedIOException e) {
+			System.out.println("WARNING: ignoring unreadable cached policy " + file + ": " + e.getCause().getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the policy cached for this algorithm and these parameters. On a
+	 * cache miss the policy is trained and stored for next time.
+	 *
+	 * @param algorithm a short name for the training algorithm
+	 * @param train     trains and returns the policy
+	 * @param params    every parameter that affects the trained policy
+	 * @return the cached or newly trained policy
+	 */
+	public static Policy getOrTrain(String algorithm, Supplier<Policy> train, Object... params) {
+		return getOrTrain(fileFor(algorithm, params), train);
+	}
+
+	/**
+	 * Returns the policy cached in {@code file}. On a cache miss the policy is
+	 * trained and stored there for next time.
+	 *
+	 * @param file  the cache file, see {@link #fileFor}
+	 * @param train trains and returns the policy
+	 * @return the cached or newly trained policy
+	 */
+	public static Policy getOrTrain(Path file, Supplier<Policy> train) {
+		Policy cached = load(file);
+		if (cached != null)
+			return cached;
+
+		Policy trained = train.get();
+		store(file, trained);
+		return trained;
+	}
+
+	/**
+	 * Stores a trained policy in the cache, if the cache is enabled. The cache
+	 * directory is created if it does not exist yet.
+	 *
+	 * @param file    the cache file, see {@link #fileFor}
+	 * @param trained
+	 */
+	public static void store(Path file, Policy trained) {
+		if (isEnabled() && trained != null) {
+			try {
+				Path dir = file.toAbsolutePath().getParent();
+				if (dir != null)
+					Files.createDirectories(dir);
+				trained.writeToFile(file);
+			} catch (IOException e) {
+				System.out.println("WARNING: could not cache policy in " + file + ": " + e.getMessage());
+			}
+		}
+	}
+
+}
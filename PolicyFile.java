@@ -0,0 +1,124 @@
+package ticTacToe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A compact binary file format for policies, and the writer and reader for it.
+ *
+ * A policy file is a 16 byte header followed by one byte for every game hash
+ * (see {@link Game#hashCode}): the cell index {@code 3*x+y} of the policy's
+ * move in that game, or {@link #NO_MOVE} if the policy has no move there
+ * (terminal, invalid or unknown games). The hash is already a dense id over
+ * all boards, so a lookup is a single array access:
+ *
+ * <pre>
+ * int  magic "TTTP"
+ * int  version
+ * int  number of entries (59049)
+ * int  reserved
+ * byte moves[59049]
+ * </pre>
+ *
+ * Files are read by memory-mapping them, so loading a policy copies nothing
+ * onto the heap and takes microseconds, and several processes mapping the same
+ * file share one copy in the page cache.
+ *
+ */
+public class PolicyFile {
+
+	static final int MAGIC = 0x54545450; // "TTTP"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 16;
+
+	/**
+	 * the entry for games in which the policy has no move
+	 */
+	public static final byte NO_MOVE = (byte) 0xFF;
+
+	private PolicyFile() {
+	}
+
+	/**
+	 * Writes the move of {@code policy} in every valid, non-terminal game to
+	 * {@code file}. The file is written under a temporary name and renamed into
+	 * place, so readers never see a partial file.
+	 *
+	 * @param file
+	 * @param policy
+	 * @throws IOException
+	 */
+	public static void write(Path file, Policy policy) throws IOException {
+		byte[] moves = new byte[QTable.NUM_STATES];
+		for (int hash = 0; hash < moves.length; hash++) {
+			moves[hash] = NO_MOVE;
+			Game g = Game.inverseHash(hash);
+			if (g == null || !g.isValid() || g.evaluateGameState() != Game.ONGOING)
+				continue;
+
+			Move m = policy.getMove(g);
+			if (m != null && m.who.getName() == g.whoseTurn.getName() && g.isLegal(m))
+				moves[hash] = (byte) (m.x * 3 + m.y);
+		}
+
+		write(file, moves);
+	}
+
+	/**
+	 * Writes a policy given as one move per game hash.
+	 *
+	 * @param file
+	 * @param moves the cell index of the move for every game hash, or
+	 *              {@link #NO_MOVE}
+	 * @throws IOException
+	 */
+	public static void write(Path file, byte[] moves) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(moves.length).putInt(0).flip();
+
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer body = ByteBuffer.wrap(moves);
+			while (header.hasRemaining() || body.hasRemaining())
+				ch.write(new ByteBuffer[] { header, body });
+			ch.force(true);
+		}
+		Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Maps a policy file read-only.
+	 *
+	 * @param file
+	 * @return a buffer whose byte at index {@code hash} is the move for game
+	 *         {@code hash}
+	 * @throws IOException if the file cannot be read or is not a policy file
+	 */
+	public static ByteBuffer map(Path file) throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (ch.size() != HEADER_BYTES + QTable.NUM_STATES)
+				throw new IOException(file + " is not a policy file");
+
+			MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			buf.order(ByteOrder.LITTLE_ENDIAN);
+			if (buf.getInt(0) != MAGIC)
+				throw new IOException(file + " is not a policy file");
+			if (buf.getInt(4) != VERSION)
+				throw new IOException(file + " has unsupported policy file version " + buf.getInt(4));
+			if (buf.getInt(8) != QTable.NUM_STATES)
+				throw new IOException(file + " does not hold a move for every game hash");
+
+			// the mapping stays valid after the channel is closed
+			return buf.position(HEADER_BYTES).slice();
+		}
+	}
+
+}
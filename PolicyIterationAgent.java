@@ -1,9 +1,11 @@
 package ticTacToe;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Random;
 import java.util.Set;
+import java.util.SplittableRandom;
 
 /**
  * A policy iteration agent. You should implement the following methods: (1)
@@ -45,16 +47,61 @@ public class PolicyIterationAgent extends Agent {
 	TTTMDP mdp;
 
 	/**
-	 * loads the policy from file if one exists. Policies should be stored in .pol
-	 * files directly under the project folder.
+	 * The generator used to draw the initial random policy
+	 */
+	SplittableRandom random = Rng.split();
+
+	/**
+	 * if set, told how far training has got
+	 */
+	TrainingProgress progress = null;
+
+	/**
+	 * see {@link Metrics}
+	 */
+	static final Metrics.Timer TRAIN = Metrics.timer("pi.train");
+	static final Metrics.Counter EVALUATION_SWEEPS = Metrics.counter("pi.evaluationSweeps");
+	static final Metrics.Counter IMPROVEMENTS = Metrics.counter("pi.improvements");
+
+	/**
+	 * loads the policy from file if one exists. Policies are stored in .pol files
+	 * directly under the project folder by the {@link PolicyCache}: on a cache miss
+	 * the agent is trained and its policy stored for next time. The policy is
+	 * shared through the {@link ModelRegistry}, so agents made with the same
+	 * parameters in one process share one copy. Unless this agent trained,
+	 * {@link #policyValues} and {@link #curPolicy} are left empty.
 	 */
 	public PolicyIterationAgent() {
 		super();
 		this.mdp = new TTTMDP();
-		initValues();
-		initRandomPolicy();
-		train();
+		super.policy = ModelRegistry.getOrTrain(cacheFile(), () -> {
+			initValues();
+			initRandomPolicy();
+			train();
+			return policy;
+		});
+
+	}
+
+	/**
+	 * 
+	 * @return the {@link PolicyCache} file for a policy trained with this agent's
+	 *         parameters
+	 */
+	public Path cacheFile() {
+		return PolicyCache.fileFor("pi", discount, mdp.winReward, mdp.loseReward, mdp.livingReward, mdp.drawReward,
+				delta, PolicyCache.seedKey());
+	}
 
+	/**
+	 * Reports progress to {@code progress} while training, once per round of
+	 * policy evaluation and improvement. The number of rounds is not known in
+	 * advance.
+	 * 
+	 * @param progress
+	 */
+	public void setTrainingProgress(TrainingProgress progress) {
+		this.progress = progress;
 	}
 
 	/**
@@ -122,7 +169,7 @@ public class PolicyIterationAgent extends Agent {
 	 * choose randomly between them.
 	 */
 	public void initRandomPolicy() {
-		Random randomPolicy = new Random(); // create an object to generate random moves
+		SplittableRandom randomPolicy = random; // generator used to pick the random moves
 
 		for (Game g : policyValues.keySet()) {
 			if (!g.isTerminal()) {
@@ -151,9 +198,15 @@ public class PolicyIterationAgent extends Agent {
 	 * @param delta
 	 */
 	protected void evaluatePolicy(double delta) {
+		FlightEvents.PolicyEvaluation event = new FlightEvents.PolicyEvaluation();
+		event.begin();
+		int sweeps = 0;
+		double residual;
+
 		boolean isConverged;
 		do { // looping until delta reaches threshold
 			isConverged = true;
+			residual = 0.0;
 
 			for (Game g : curPolicy.keySet()) {
 				double oldVal = policyValues.get(g); // Store the current value of the state
@@ -168,12 +221,22 @@ public class PolicyIterationAgent extends Agent {
 				}
 
 				policyValues.put(g, newVal); // update the value of the state in the policy values
+				residual = Math.max(residual, Math.abs(oldVal - newVal));
 				if (Math.abs(oldVal - newVal) >= delta) { // checking if delta threshold is reached and ending loop
 					isConverged = false;
 				}
 			}
+			EVALUATION_SWEEPS.increment();
+			sweeps++;
 		} while (!isConverged);
 
+		if (event.shouldCommit()) {
+			event.sweeps = sweeps;
+			event.states = curPolicy.size();
+			event.residual = residual;
+			event.commit();
+		}
+
 		/* YOUR CODE HERE */
 
 	}
@@ -190,6 +253,11 @@ public class PolicyIterationAgent extends Agent {
 	 *         improvement, i.e. the policy already returned the optimal actions.
 	 */
 	protected boolean improvePolicy() {
+		IMPROVEMENTS.increment();
+		FlightEvents.PolicyImprovement event = new FlightEvents.PolicyImprovement();
+		event.begin();
+		int changed = 0;
+
 		Set<Game> states = curPolicy.keySet();
 		boolean improvePolicy = false;
 
@@ -219,14 +287,56 @@ public class PolicyIterationAgent extends Agent {
 				if (!currentMove.equals(bestMove)) { // check the current move and the best move
 					curPolicy.put(g, bestMove); // Update the policy with the best move
 					improvePolicy = true;
+					changed++;
 				}
 			}
 		}
 
+		if (event.shouldCommit()) {
+			event.states = states.size();
+			event.changed = changed;
+			event.commit();
+		}
+
 		return improvePolicy;
 		/* YOUR CODE HERE */
 	}
 
+	/**
+	 * Writes {@link #policyValues} to a {@link ValueFile}, which other processes
+	 * can map with {@link ValueFile#map(Path)}.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	public void exportValues(Path file) throws IOException {
+		ValueFile.write(file, policyValues, discount, mdp);
+	}
+
+	/**
+	 * Replaces {@link #policyValues} with a copy of the values in {@code file},
+	 * and improves the current policy (a random one, if there is none yet)
+	 * against them. {@link #train()} may be called afterwards to continue from
+	 * there.
+	 * 
+	 * @param file a {@link ValueFile} computed with this agent's discount factor
+	 *             and rewards
+	 * @throws IOException if the file cannot be read, or was computed with other
+	 *                     parameters
+	 */
+	public void importValues(Path file) throws IOException {
+		ValueFile values = ValueFile.map(file);
+		if (!values.matches(discount, mdp))
+			throw new IOException(file + " was computed with a different discount factor or rewards");
+
+		policyValues.clear();
+		policyValues.putAll(values.asMap());
+		if (curPolicy.isEmpty())
+			initRandomPolicy();
+		improvePolicy();
+		super.policy = new Policy(curPolicy);
+	}
+
 	/**
 	 * The (convergence) delta
 	 */
@@ -239,14 +349,27 @@ public class PolicyIterationAgent extends Agent {
 	 * {@link PolicyIterationAgent#improvePolicy} methods.
 	 */
 	public void train() {
+		Metrics.Phase phase = TRAIN.start();
+		try {
+			trainUntimed();
+		} finally {
+			phase.close();
+		}
+	}
+
+	private void trainUntimed() {
 		boolean policyChanged; // check if the policy has changed after policy evaluation and policy
 								// improvement
+		int rounds = 0;
 
 		do {
 			evaluatePolicy(delta); // do policy evaluation and update values of states
 
 			policyChanged = improvePolicy(); // do policy improvement to update the policy
 
+			if (progress != null)
+				progress.onProgress("policy iteration", ++rounds, -1);
+
 		} while (policyChanged);
 
 		super.policy = new Policy(curPolicy); // Set the policy of agent to the final policy
@@ -0,0 +1,405 @@
+package ticTacToe;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the moves of a trained policy to other programs, by board, without
+ * any {@link Game} objects.
+ *
+ * A board is given by its game hash (see {@link Game#hashCode}), and answered
+ * with the cell {@code 3*x+y} to play, or -1 if the policy has no move there
+ * (the game is over, or the board cannot occur). The policy is compiled once
+ * into a flat table of one byte per hash, so a lookup is one array read, and
+ * {@link #getMove(int)} and {@link #getMoves} allocate nothing and can be
+ * called from any number of threads.
+ *
+ * The same lookups are served over HTTP by {@link #start}:
+ *
+ * <pre>
+ * GET  /move?board=&lt;hash&gt;   the move, e.g. "4"
+ * POST /moves               body: hashes separated by spaces, commas or newlines;
+ *                           reply: their moves, separated by spaces
+ * GET  /stats               number of lookups and request latency percentiles
+ * </pre>
+ *
+ * Requests run on virtual threads where the JVM has them (Java 21 and later),
+ * and on a fixed pool of platform threads otherwise.
+ *
+ */
+public class PolicyServer implements Closeable {
+
+	/**
+	 * the move of every game hash, {@link PolicyFile#NO_MOVE} if there is none
+	 */
+	private final byte[] moves = new byte[QTable.NUM_STATES];
+
+	private final LongAdder lookups = new LongAdder();
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	private HttpServer http;
+	private ExecutorService executor;
+
+	/**
+	 * Compiles {@code policy} into a table, asking it for its move in every
+	 * reachable position.
+	 *
+	 * @param policy a policy with moves for either side, e.g. a
+	 *               {@link MirroredPolicy}
+	 */
+	public PolicyServer(Policy policy) {
+		Arrays.fill(moves, PolicyFile.NO_MOVE);
+		StateSpace space = StateSpace.get();
+		for (int id = 0; id < space.size(); id++)
+			if (!space.isTerminal(id))
+				moves[space.hash(id)] = (byte) policy.getCell(space.position(id));
+	}
+
+	/**
+	 *
+	 * @param hash a game hash
+	 * @return the cell to play, or -1 if there is no move for {@code hash}
+	 */
+	public int getMove(int hash) {
+		lookups.increment();
+		return hash >= 0 && hash < moves.length ? moves[hash] : -1;
+	}
+
+	/**
+	 * Looks up a batch of boards.
+	 *
+	 * @param hashes game hashes
+	 * @param from   the first hash to look up
+	 * @param n      the number of hashes to look up
+	 * @param cells  where to put the moves, -1 where there is none
+	 * @param offset where to put the first move
+	 */
+	public void getMoves(int[] hashes, int from, int n, byte[] cells, int offset) {
+		lookups.add(n);
+		for (int i = 0; i < n; i++) {
+			int hash = hashes[from + i];
+			cells[offset + i] = hash >= 0 && hash < moves.length ? moves[hash] : -1;
+		}
+	}
+
+	/**
+	 *
+	 * @return the number of boards looked up so far
+	 */
+	public long getLookups() {
+		return lookups.sum();
+	}
+
+	/**
+	 *
+	 * @return the latencies of the HTTP requests served so far
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Starts serving over HTTP.
+	 *
+	 * @param address where to listen; port 0 picks any free port
+	 * @return the address listened on
+	 * @throws IOException
+	 */
+	public synchronized InetSocketAddress start(InetSocketAddress address) throws IOException {
+		if (http != null)
+			throw new IllegalStateException("Already started");
+
+		// small replies otherwise wait on delayed acknowledgements, ~40ms each
+		if (System.getProperty("sun.net.httpserver.nodelay") == null)
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		http = HttpServer.create(address, 1024);
+		executor = newExecutor();
+		http.setExecutor(executor);
+		http.createContext("/move", this::handleMove);
+		http.createContext("/moves", this::handleMoves);
+		http.createContext("/stats", this::handleStats);
+		http.start();
+		return http.getAddress();
+	}
+
+	/**
+	 * Stops serving over HTTP. Lookups can still be made directly.
+	 */
+	public synchronized void close() {
+		if (http == null)
+			return;
+
+		http.stop(0);
+		executor.shutdown();
+		http = null;
+	}
+
+	/**
+	 *
+	 * @return a virtual thread per task executor if this JVM has virtual threads,
+	 *         else a pool of daemon threads, two per processor
+	 */
+	static ExecutorService newExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			AtomicInteger n = new AtomicInteger();
+			ThreadFactory daemons = r -> {
+				Thread t = new Thread(r, "policy-server-" + n.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			};
+			return Executors.newFixedThreadPool(2 * Runtime.getRuntime().availableProcessors(), daemons);
+		}
+	}
+
+	private void handleMove(HttpExchange ex) throws IOException {
+		long start = System.nanoTime();
+		try {
+			String query = ex.getRequestURI().getRawQuery();
+			if (!"GET".equals(ex.getRequestMethod()) || query == null || !query.startsWith("board=")) {
+				reply(ex, 400, "expected GET /move?board=<hash>\n");
+				return;
+			}
+			int hash;
+			try {
+				hash = Integer.parseInt(query.substring(6));
+			} catch (NumberFormatException e) {
+				reply(ex, 400, "board should be a game hash\n");
+				return;
+			}
+			reply(ex, 200, getMove(hash) + "\n");
+		} finally {
+			latency.record(System.nanoTime() - start);
+		}
+	}
+
+	private void handleMoves(HttpExchange ex) throws IOException {
+		long start = System.nanoTime();
+		try {
+			if (!"POST".equals(ex.getRequestMethod())) {
+				reply(ex, 400, "expected POST /moves\n");
+				return;
+			}
+
+			int[] hashes = new int[64];
+			int n = 0;
+			try (InputStream in = new BufferedInputStream(ex.getRequestBody())) {
+				int value = -1;
+				for (int c = in.read(); c >= 0; c = in.read()) {
+					if (c >= '0' && c <= '9') {
+						// stop growing once too big to be a hash, and so answered with -1
+						value = value < 0 ? c - '0' : value > QTable.NUM_STATES ? value : value * 10 + c - '0';
+						continue;
+					}
+					if (c != ' ' && c != ',' && c != '\n' && c != '\r' && c != '\t') {
+						reply(ex, 400, "boards should be game hashes\n");
+						return;
+					}
+					if (value >= 0) {
+						if (n == hashes.length)
+							hashes = Arrays.copyOf(hashes, 2 * n);
+						hashes[n++] = value;
+						value = -1;
+					}
+				}
+				if (value >= 0) {
+					if (n == hashes.length)
+						hashes = Arrays.copyOf(hashes, n + 1);
+					hashes[n++] = value;
+				}
+			}
+
+			byte[] cells = new byte[n];
+			getMoves(hashes, 0, n, cells, 0);
+			StringBuilder sb = new StringBuilder(3 * n + 1);
+			for (int i = 0; i < n; i++) {
+				if (i > 0)
+					sb.append(' ');
+				sb.append(cells[i]);
+			}
+			reply(ex, 200, sb.append('\n').toString());
+		} finally {
+			latency.record(System.nanoTime() - start);
+		}
+	}
+
+	private void handleStats(HttpExchange ex) throws IOException {
+		reply(ex, 200, "lookups=" + getLookups() + " latency " + latency + "\n");
+	}
+
+	private static void reply(HttpExchange ex, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.US_ASCII);
+		ex.getResponseHeaders().set("Content-Type", "text/plain");
+		ex.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = ex.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Times direct lookups of random reachable boards, singly and in batches of
+	 * {@code batch}.
+	 */
+	private void benchmark(int batch) {
+		StateSpace space = StateSpace.get();
+		SplittableRandom random = Rng.split();
+		int[] hashes = new int[1 << 16];
+		for (int i = 0; i < hashes.length; i++)
+			hashes[i] = space.hash(random.nextInt(space.size()));
+		byte[] cells = new byte[batch];
+
+		for (int round = 0; round < 3; round++) { // the first rounds warm up
+			long start = System.nanoTime();
+			long sum = 0;
+			for (int rep = 0; rep < 200; rep++)
+				for (int h : hashes)
+					sum += getMove(h);
+			double single = 200.0 * hashes.length / ((System.nanoTime() - start) / 1e9);
+
+			start = System.nanoTime();
+			for (int rep = 0; rep < 200; rep++)
+				for (int i = 0; i + batch <= hashes.length; i += batch) {
+					getMoves(hashes, i, batch, cells, 0);
+					sum += cells[0];
+				}
+			double batched = 200.0 * (hashes.length / batch * batch) / ((System.nanoTime() - start) / 1e9);
+
+			if (round == 2)
+				System.out.println(String.format("direct lookups: %.1fM/s singly, %.1fM/s in batches of %d (checksum %d)",
+						single / 1e6, batched / 1e6, batch, sum));
+		}
+		lookups.reset();
+	}
+
+	/**
+	 * Sends {@code requests} batch requests of {@code batch} random boards each
+	 * from {@code clients} threads, and waits for the replies.
+	 */
+	private static void load(InetSocketAddress address, int requests, int batch, int clients) throws Exception {
+		StateSpace space = StateSpace.get();
+		HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+		URI uri = URI.create("http://" + address.getHostString() + ":" + address.getPort() + "/moves");
+
+		ExecutorService pool = Executors.newFixedThreadPool(clients);
+		List<Future<Long>> futures = new ArrayList<Future<Long>>();
+		long start = System.nanoTime();
+		for (int c = 0; c < clients; c++) {
+			SplittableRandom random = Rng.split();
+			int share = requests / clients + (c < requests % clients ? 1 : 0);
+			futures.add(pool.submit(() -> {
+				long answered = 0;
+				StringBuilder body = new StringBuilder();
+				for (int r = 0; r < share; r++) {
+					body.setLength(0);
+					for (int i = 0; i < batch; i++)
+						body.append(space.hash(random.nextInt(space.size()))).append(' ');
+					HttpResponse<String> reply = client.send(
+							HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString(body.toString())).build(),
+							HttpResponse.BodyHandlers.ofString());
+					if (reply.statusCode() == 200)
+						answered += batch;
+				}
+				return answered;
+			}));
+		}
+		long answered = 0;
+		for (Future<Long> f : futures)
+			answered += f.get();
+		pool.shutdown();
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("%d requests, %d boards in %.2fs: %.0f requests/s, %.0f boards/s", requests,
+				answered, seconds, requests / seconds, answered / seconds));
+	}
+
+	/**
+	 * Serves a trained policy:
+	 * {@code [-port <n>] [-policy vi|pi|ql|rule] [-load <requests>] [-batch <boards>] [-clients <n>]}.
+	 * First times direct lookups. With {@code -load}, sends that many batch
+	 * requests over loopback, prints the latencies and exits; otherwise serves
+	 * until killed, printing the latencies every ten seconds.
+	 *
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		int port = 8080;
+		String policy = "vi";
+		int load = 0;
+		int batch = 100;
+		int clients = 4;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "-port":
+				port = Integer.parseInt(args[i + 1]);
+				break;
+			case "-policy":
+				policy = args[i + 1];
+				break;
+			case "-load":
+				load = Integer.parseInt(args[i + 1]);
+				break;
+			case "-batch":
+				batch = Integer.parseInt(args[i + 1]);
+				break;
+			case "-clients":
+				clients = Integer.parseInt(args[i + 1]);
+				break;
+			default:
+				System.out.println("Unknown option " + args[i]);
+				return;
+			}
+		}
+
+		PolicyServer server = new PolicyServer(MoveServer.policyFor(policy));
+		server.benchmark(batch);
+
+		if (load > 0) {
+			InetSocketAddress address = server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			try {
+				load(address, load, batch, clients);
+				System.out.println("latency " + server.getLatency());
+			} finally {
+				server.close();
+			}
+			return;
+		}
+
+		InetSocketAddress address = server.start(new InetSocketAddress(port));
+		System.out.println("Serving " + policy + " on http://localhost:" + address.getPort() + "/");
+		long requests = 0;
+		while (true) {
+			Thread.sleep(10000);
+			LatencyHistogram l = server.getLatency();
+			if (l.count() != requests) {
+				requests = l.count();
+				System.out.println("lookups=" + server.getLookups() + " latency " + l);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,242 @@
+package ticTacToe;
+
+/**
+ * An immutable game position: the marks on the board and whose turn it is,
+ * with no agents attached.
+ *
+ * Unlike {@link Game}, a position never changes and holds no reference to the
+ * players, so positions can be shared freely between threads, and used as keys,
+ * without locks or defensive copies. Moves are pure functions from one
+ * position to the next: {@link #play(int)} returns the resulting position and
+ * leaves this one as it is.
+ *
+ * Cells are numbered {@code 3*x+y}, as in {@link Game#legalMoveMask()}. There
+ * is exactly one position per game hash, and positions are interned, so
+ * playing moves allocates nothing once the positions have been seen.
+ *
+ */
+public final class Position {
+
+	/**
+	 * every position created so far, by hash. Positions are immutable, so a race
+	 * to fill a slot is harmless.
+	 */
+	private static final Position[] interned = new Position[QTable.NUM_STATES];
+
+	/**
+	 * the empty board with X to move
+	 */
+	public static final Position X_FIRST = of(0, 0, true);
+
+	/**
+	 * the empty board with O to move
+	 */
+	public static final Position O_FIRST = of(0, 0, false);
+
+	/**
+	 * the agents of the games made by {@link #toGame()}
+	 */
+	private static final Agent X = new Agent();
+	private static final Agent O = new Agent();
+
+	private final int xMask;
+	private final int oMask;
+	private final boolean xToMove;
+	private final int hash;
+	private final int state;
+
+	private Position(int xMask, int oMask, boolean xToMove) {
+		this.xMask = xMask;
+		this.oMask = oMask;
+		this.xToMove = xToMove;
+		this.hash = BitBoard.encode(xMask, oMask, xToMove);
+		this.state = BitBoard.evaluate(xMask, oMask);
+	}
+
+	/**
+	 *
+	 * @param xMask   the cells holding an X
+	 * @param oMask   the cells holding an O
+	 * @param xToMove whose turn it is
+	 * @return the position
+	 */
+	public static Position of(int xMask, int oMask, boolean xToMove) {
+		if ((xMask & ~BitBoard.FULL) != 0 || (oMask & ~BitBoard.FULL) != 0 || (xMask & oMask) != 0)
+			throw new IllegalArgumentException("Invalid board masks: " + xMask + ", " + oMask);
+
+		int hash = BitBoard.encode(xMask, oMask, xToMove);
+		Position p = interned[hash];
+		if (p == null)
+			interned[hash] = p = new Position(xMask, oMask, xToMove);
+
+		return p;
+	}
+
+	/**
+	 *
+	 * @param g
+	 * @return the position of {@code g}
+	 */
+	public static Position of(Game g) {
+		return of(g.marks('X'), g.marks('O'), g.whoseTurn.getName() == 'X');
+	}
+
+	/**
+	 *
+	 * @param hash a game hash, see {@link Game#hashCode}
+	 * @return the position encoded by {@code hash}
+	 */
+	public static Position ofHash(int hash) {
+		if (hash < 0 || hash >= QTable.NUM_STATES || hash % 3 == 0)
+			throw new IllegalArgumentException("Not a game hash: " + hash);
+
+		Position p = interned[hash];
+		return p != null ? p : of(BitBoard.xMaskOf(hash), BitBoard.oMaskOf(hash), BitBoard.xToMoveOf(hash));
+	}
+
+	/**
+	 * Plays a move for whoever is to move.
+	 *
+	 * @param cell the cell {@code 3*x+y}
+	 * @return the position after the move
+	 * @throws IllegalArgumentException if the game is over or the cell is taken
+	 */
+	public Position play(int cell) {
+		if (cell < 0 || cell > 8 || (legalMoves() >> cell & 1) == 0)
+			throw new IllegalArgumentException("Illegal move " + cell + " in" + this);
+
+		return xToMove ? of(xMask | 1 << cell, oMask, false) : of(xMask, oMask | 1 << cell, true);
+	}
+
+	/**
+	 *
+	 * @param x
+	 * @param y
+	 * @return the position after playing (x,y)
+	 */
+	public Position play(int x, int y) {
+		if (x < 0 || x > 2 || y < 0 || y > 2)
+			throw new IllegalArgumentException("Invalid x or y coordinates");
+
+		return play(3 * x + y);
+	}
+
+	/**
+	 *
+	 * @return the same board with X's and O's swapped, and the other player to
+	 *         move
+	 */
+	public Position swapped() {
+		return of(oMask, xMask, !xToMove);
+	}
+
+	public int xMask() {
+		return xMask;
+	}
+
+	public int oMask() {
+		return oMask;
+	}
+
+	public boolean isXToMove() {
+		return xToMove;
+	}
+
+	/**
+	 *
+	 * @return 'X' or 'O'
+	 */
+	public char toMove() {
+		return xToMove ? 'X' : 'O';
+	}
+
+	/**
+	 *
+	 * @return the empty cells as a bitmask, or 0 if the game is over
+	 */
+	public int legalMoves() {
+		return state == Game.ONGOING ? BitBoard.FULL & ~(xMask | oMask) : 0;
+	}
+
+	/**
+	 *
+	 * @return one of {@link Game#ONGOING}, {@link Game#X_WON},
+	 *         {@link Game#O_WON} or {@link Game#DRAW}
+	 */
+	public int state() {
+		return state;
+	}
+
+	public boolean isTerminal() {
+		return state != Game.ONGOING;
+	}
+
+	/**
+	 *
+	 * @return the game hash of this position, see {@link Game#hashCode}
+	 */
+	public int hash() {
+		return hash;
+	}
+
+	/**
+	 *
+	 * @return the dense id of this position in the {@link StateSpace}, or -1 if it
+	 *         cannot be reached in play
+	 */
+	public int id() {
+		return StateSpace.get().id(hash);
+	}
+
+	/**
+	 * Makes a game in this position, to be played by {@code x} and {@code o}.
+	 * Note that {@link Game} names its agents, so an agent should only play one
+	 * side at a time.
+	 *
+	 * @param x
+	 * @param o
+	 * @return a new game
+	 */
+	public Game toGame(Agent x, Agent o) {
+		Game g = new Game(x, o, xToMove ? x : o);
+		for (int cell = 0; cell < 9; cell++) {
+			if ((xMask >> cell & 1) != 0)
+				g.board[cell / 3][cell % 3] = 'X';
+			else if ((oMask >> cell & 1) != 0)
+				g.board[cell / 3][cell % 3] = 'O';
+		}
+		g.state = state;
+		return g;
+	}
+
+	/**
+	 *
+	 * @return a new game in this position, between two agents shared by every
+	 *         game made this way, e.g. to ask a {@link Policy} for its move
+	 */
+	public Game toGame() {
+		return toGame(X, O);
+	}
+
+	public int hashCode() {
+		return hash;
+	}
+
+	public boolean equals(Object other) {
+		return other instanceof Position && ((Position) other).hash == hash;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder("\n");
+		for (int cell = 0; cell < 9; cell++) {
+			if (cell % 3 == 0)
+				sb.append('|');
+			sb.append((xMask >> cell & 1) != 0 ? 'X' : (oMask >> cell & 1) != 0 ? 'O' : ' ').append('|');
+			if (cell % 3 == 2)
+				sb.append('\n');
+		}
+
+		return sb.toString();
+	}
+
+}
@@ -1,11 +1,9 @@
 package ticTacToe;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.NoSuchElementException;
-import java.util.Random;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
 
 /**
  * A Q-Learning agent with a Q-Table, i.e. a table of Q-Values. This table is
@@ -45,13 +43,74 @@ public class QLearningAgent extends Agent {
 	 */
 	double epsilon = 0.1;
 
+	/**
+	 * If set, the exploration schedule used during training instead of a constant
+	 * {@link #epsilon}.
+	 */
+	EpsilonSchedule epsilonSchedule = null;
+
+	/**
+	 * The number of steps looked ahead in n-step Q-learning. 1 is one-step
+	 * Q-learning.
+	 */
+	int nSteps = 1;
+
+	/**
+	 * The trace decay of Watkins's Q(lambda). 0 disables eligibility traces.
+	 */
+	double lambda = 0.0;
+
+	/**
+	 * The number of episodes trained so far. Indexes the epsilon schedule.
+	 */
+	long episodesTrained = 0;
+
+	/**
+	 * If set, where the q-table is checkpointed during training, and how often
+	 */
+	QTableCheckpoint checkpoint = null;
+	int checkpointEvery = 1000;
+
+	/**
+	 * if set, told how far training has got
+	 */
+	TrainingProgress progress = null;
+
+	/**
+	 * see {@link Metrics}
+	 */
+	static final Metrics.Timer TRAIN = Metrics.timer("ql.train");
+	static final Metrics.Counter EPISODES = Metrics.counter("ql.episodes");
+	static final Metrics.Counter UPDATES = Metrics.counter("ql.updates");
+
+	/**
+	 * If set, checks for convergence and reports metrics during training.
+	 */
+	ConvergenceMonitor monitor = null;
+
+	/**
+	 * The moves of the current episode, used by the n-step and Q(lambda) updates.
+	 * X moves at most 5 times in a game.
+	 */
+	private final int[] trajStates = new int[6];
+	private final int[] trajMasks = new int[6];
+	private final int[] trajCells = new int[5];
+	private final double[] trajRewards = new double[5];
+	private final double[] trajTraces = new double[5];
+
+	/**
+	 * the rewards received in the current batch of episodes, for
+	 * {@link FlightEvents.QLearningBatch}
+	 */
+	private double batchReward = 0.0;
+
 	/**
 	 * This is the Q-Table. To get an value for an (s,a) pair, i.e. a (game, move)
 	 * pair.
 	 * 
 	 */
 
-	QTable qTable = new QTable();
+	QTable qTable;
 
 	/**
 	 * This is the Reinforcement Learning environment that this agent will interact
@@ -59,7 +118,13 @@ public class QLearningAgent extends Agent {
 	 * should make your q learning agent learn the same policy as your value
 	 * iteration and policy iteration agents.
 	 */
-	TTTEnvironment env = new TTTEnvironment();
+	TTTEnvironment env;
+
+	/**
+	 * The generator used for exploration. Split from {@link Rng} unless one is
+	 * given to the constructor.
+	 */
+	SplittableRandom random;
 
 	/**
 	 * Construct a Q-Learning agent that learns from interactions with
@@ -72,7 +137,33 @@ public class QLearningAgent extends Agent {
 	 * @param numEpisodes  The number of episodes (games) to train for
 	 */
 	public QLearningAgent(Agent opponent, double learningRate, int numEpisodes, double discount) {
+		this(opponent, learningRate, numEpisodes, discount, Rng.split());
+	}
+
+	/**
+	 * As above, exploring with {@code random}. Pass a generator split from a seeded
+	 * {@link Rng} (and an opponent drawing from its own seeded generator) to make
+	 * training reproducible.
+	 * 
+	 * @param random the generator used for epsilon-greedy exploration
+	 */
+	public QLearningAgent(Agent opponent, double learningRate, int numEpisodes, double discount,
+			SplittableRandom random) {
+		this(opponent, learningRate, numEpisodes, discount, null, random);
+	}
+
+	/**
+	 * As above, exploring according to {@code schedule} instead of a constant
+	 * {@link #epsilon}.
+	 * 
+	 * @param schedule the exploration schedule, see {@link EpsilonSchedule}
+	 * @param random   the generator used for epsilon-greedy exploration
+	 */
+	public QLearningAgent(Agent opponent, double learningRate, int numEpisodes, double discount,
+			EpsilonSchedule schedule, SplittableRandom random) {
 		env = new TTTEnvironment(opponent);
+		this.epsilonSchedule = schedule;
+		this.random = random;
 		this.alpha = learningRate;
 		this.numEpisodes = numEpisodes;
 		this.discount = discount;
@@ -81,33 +172,114 @@ public class QLearningAgent extends Agent {
 	}
 
 	/**
-	 * Initialises all valid q-values -- Q(g,m) -- to 0.
+	 * An untrained agent. Set the number of episodes and, optionally, n-step or
+	 * Q(lambda) updates, then call {@link #train()}.
 	 * 
+	 * @param opponent     the opponent agent that this Q-Learning agent will
+	 *                     interact with to learn.
+	 * @param learningRate the learning rate
+	 * @param discount     the discount factor
+	 * @param schedule     the exploration schedule, or null for a constant
+	 *                     {@link #epsilon}
+	 * @param random       the generator used for epsilon-greedy exploration
 	 */
+	public QLearningAgent(Agent opponent, double learningRate, double discount, EpsilonSchedule schedule,
+			SplittableRandom random) {
+		env = new TTTEnvironment(opponent);
+		this.epsilonSchedule = schedule;
+		this.random = random;
+		this.alpha = learningRate;
+		this.discount = discount;
+		initQTable();
+	}
 
-	protected void initQTable() {
-		List<Game> allGames = Game.generateAllValidGames('X');// all valid games where it is X's turn, or it's terminal.
-		for (Game g : allGames) {
-			List<Move> moves = g.getPossibleMoves();
-			for (Move m : moves) {
-				this.qTable.addQValue(g, m, 0.0);
-				// System.out.println("initing q value. Game:"+g);
-				// System.out.println("Move:"+m);
+	/**
+	 * A crash-safe learner: resumes from the checkpoint in {@code checkpoint} if
+	 * there is one, trains until {@code numEpisodes} episodes have been played in
+	 * total, and checkpoints to the same file every {@code checkpointEvery}
+	 * episodes. Exploration does not replay the generator state of the run that
+	 * was interrupted, so a resumed run is not identical to an uninterrupted one.
+	 * 
+	 * @param checkpoint      the checkpoint file
+	 * @param checkpointEvery the number of episodes between checkpoints
+	 * @param opponent        the opponent to learn against
+	 * @param learningRate    the learning rate
+	 * @param numEpisodes     the total number of episodes to train for, including
+	 *                        those already in the checkpoint
+	 * @param discount        the discount factor
+	 */
+	public QLearningAgent(Path checkpoint, int checkpointEvery, Agent opponent, double learningRate, int numEpisodes,
+			double discount) {
+		this(opponent, learningRate, discount, null, Rng.split());
+		if (Files.exists(checkpoint)) {
+			try {
+				QTableCheckpoint.Snapshot snapshot = QTableCheckpoint.read(checkpoint);
+				this.qTable = snapshot.qTable;
+				this.episodesTrained = snapshot.episodes;
+			} catch (IOException e) {
+				System.out.println("WARNING: could not resume from " + checkpoint + ", training from scratch");
+				e.printStackTrace();
 			}
-
 		}
 
+		setCheckpoint(checkpoint, checkpointEvery);
+		this.numEpisodes = (int) Math.max(0, numEpisodes - episodesTrained);
+		train();
+	}
+
+	/**
+	 * Initialises all q-values -- Q(g,m) -- to 0.
+	 * 
+	 */
+
+	protected void initQTable() {
+		if (this.qTable == null)
+			this.qTable = new QTable();
+		else
+			this.qTable.clear();
+
 	}
 
 	/**
 	 * Uses default parameters for the opponent (a RandomAgent) and the learning
-	 * rate (0.2). Use other constructor to set these manually.
+	 * rate (0.1). Use other constructor to set these manually.
+	 * 
+	 * The policy is shared through the {@link ModelRegistry} with every agent
+	 * made with the same parameters, and so trained at most once per process and
+	 * cached on disk by the {@link PolicyCache}. If it did not need training, the
+	 * {@link #qTable} is never allocated (null).
+	 * 
+	 * X and O take turns to start the training games (see
+	 * {@link TTTEnvironment#setBothStarters}), so that the policy has moves in
+	 * games started by either player and can be mirrored to play O (see
+	 * {@link MirroredPolicy}).
 	 */
 	public QLearningAgent() {
-		this(new RandomAgent(), 0.1, 30000, 0.9);
+		env = new TTTEnvironment(new RandomAgent());
+		env.setBothStarters(true);
+		this.random = Rng.split();
+		this.alpha = 0.1;
+		this.discount = 0.9;
+		this.numEpisodes = 60000; // 30000 with each starter
+		this.policy = ModelRegistry.getOrTrain(cacheFile(), () -> {
+			initQTable();
+			train();
+			return policy;
+		});
 
 	}
 
+	/**
+	 * 
+	 * @return the {@link PolicyCache} file for a policy trained with this agent's
+	 *         parameters
+	 */
+	public Path cacheFile() {
+		return PolicyCache.fileFor("ql", alpha, discount, epsilon, numEpisodes, env.winReward, env.loseReward,
+				env.livingReward, env.drawReward, env.opponent.getClass().getSimpleName(),
+				env.bothStarters ? "bothStarters" : "xStarts", PolicyCache.seedKey());
+	}
+
 	/**
 	 * Implement this method. It should play {@code this.numEpisodes} episodes of
 	 * Tic-Tac-Toe with the TTTEnvironment, updating q-values according to the
@@ -121,84 +293,71 @@ public class QLearningAgent extends Agent {
 	 */
 
 	public void train() {
-		Random randomQ = new Random();
+		Metrics.Phase phase = TRAIN.start();
+		try {
+			trainUntimed();
+		} finally {
+			phase.close();
+		}
+	}
+
+	private void trainUntimed() {
+		EpsilonGreedyPolicy explorer = new EpsilonGreedyPolicy(qTable, getEpsilonSchedule(), random);
+		int progressEvery = Math.max(1, numEpisodes / 10);
+		if (monitor != null)
+			monitor.start(episodesTrained);
+		FlightEvents.QLearningBatch batch = new FlightEvents.QLearningBatch();
+		batch.begin();
+		int batchEpisodes = 0;
+		batchReward = 0.0;
 
 		for (int episodes = 0; episodes < numEpisodes; episodes++) { // Loop through the episodes
-			env = new TTTEnvironment(); //create an envirnoment for episode
-			Game g = env.getCurrentGameState(); //get game state in episode
-
-			while (!g.isTerminal()) {
-				List<Move> possibleMoves = env.getPossibleMoves(); //get all possible moves in game state
-
-				if (!possibleMoves.isEmpty()) { 
-					Move selectedMove;
-					if (randomQ.nextDouble() > epsilon) { //if the Q value greater than epsilon select an action
-					    Move bestMove = null;
-					    double maxQVal = Double.NEGATIVE_INFINITY;
-
-					    for (Move m : possibleMoves) {
-					        double qVal = qTable.getQValue(g, m);
-					        if (qVal > maxQVal) {
-					            maxQVal = qVal;
-					            bestMove = m;
-					        }
-					    }
-
-					    if (bestMove != null) {
-					        selectedMove = bestMove;
-					    } else {
-					        throw new NoSuchElementException(); //throw exception if best move not found
-					    }
-					} else { //explore other random moves
-					    selectedMove = possibleMoves.get(randomQ.nextInt(possibleMoves.size()));
-					}
-
-					try { //execute the move and store it in an object
-					    Outcome outcomeMove = env.executeMove(selectedMove);
-					    List<Move> updatedMoves = env.getPossibleMoves(); //get possible moves after updating
-					    double newQVal = 0.0;
-
-					    if (!updatedMoves.isEmpty()) {
-					        Move maxUpdatedMove = null;
-					        double maxQVal = Double.NEGATIVE_INFINITY;
-
-					        for (Move m : updatedMoves) {
-					            double qVal = qTable.getQValue(outcomeMove.sPrime, m);
-					            if (qVal > maxQVal) {
-					                maxQVal = qVal;
-					                maxUpdatedMove = m;
-					            }
-					        }
-
-					        if (maxUpdatedMove != null) {
-					            newQVal = qTable.getQValue(outcomeMove.sPrime, maxUpdatedMove);
-
-					            if (!outcomeMove.sPrime.isTerminal()) { //find moves if new state is not terminal
-					                for (Move m : updatedMoves) {
-					                    double qVal = qTable.getQValue(outcomeMove.sPrime, m);
-					                    if (qVal > newQVal) {
-					                        newQVal = qVal;
-					                    }
-					                }
-					            }
-					        }
-					    }
-
-					    double currentQVal = qTable.getQValue(outcomeMove.s, selectedMove); //get current Q value and update it with the equation
-					    double updatedQVal = (1 - alpha) * currentQVal + alpha * (outcomeMove.localReward + discount * newQVal); 
-
-					    qTable.addQValue(outcomeMove.s, selectedMove, updatedQVal);
-					} catch (IllegalMoveException e) {  //Handle illegal moves and print an error
-					    e.printStackTrace();
-					}
-				}
+			env.reset(); //start a new game for the episode, against the same opponent
+			explorer.setEpisode(episodesTrained);
+
+			if (lambda > 0)
+				runQLambdaEpisode(explorer);
+			else if (nSteps > 1)
+				runNStepEpisode(explorer);
+			else
+				runEpisode(explorer);
+
+			episodesTrained++;
+			EPISODES.increment();
+			if (++batchEpisodes == FlightEvents.QLearningBatch.EPISODES) {
+				commit(batch, batchEpisodes, explorer);
+				batch = new FlightEvents.QLearningBatch();
+				batch.begin();
+				batchEpisodes = 0;
 			}
-		}
 
+			if (progress != null && (episodes + 1) % progressEvery == 0)
+				progress.onProgress("q-learning", episodes + 1, numEpisodes);
+
+			if (checkpoint != null && episodesTrained % checkpointEvery == 0)
+				checkpoint.save(qTable, episodesTrained); // copies the table, the write happens in the background
+
+			if (monitor != null) {
+				monitor.recordEpisode(env.getCurrentGameState().getState());
+				// stop early once the monitor's convergence criteria are met
+				if (episodesTrained % monitor.getInterval() == 0 && monitor.check(qTable, episodesTrained))
+					break;
+			}
+		}
 
-		/*
-		 * YOUR CODE HERE
-		 */
+		if (batchEpisodes > 0)
+			commit(batch, batchEpisodes, explorer);
+
+		if (checkpoint != null) {
+			// the final state is always checkpointed, and written before returning
+			try {
+				checkpoint.await();
+				QTableCheckpoint.write(checkpoint.file, qTable.q, episodesTrained);
+			} catch (IOException e) {
+				System.out.println("WARNING: could not write checkpoint " + checkpoint.file);
+				e.printStackTrace();
+			}
+		}
 
 		// --------------------------------------------------------
 		// you shouldn't need to delete the following lines of code.
@@ -210,42 +369,290 @@ public class QLearningAgent extends Agent {
 	}
 
 	/**
-	 * Implement this method. It should use the q-values in the {@code qTable} to
-	 * extract a policy and return it.
-	 *
-	 * @return the policy currently inherent in the QTable
+	 * Commits a flight recorder event for the last {@code episodes} episodes, if
+	 * one is being recorded, and starts summing rewards for the next batch.
 	 */
-	public Policy extractPolicy() {
-		Policy optimalPolicy = new Policy();
+	private void commit(FlightEvents.QLearningBatch batch, int episodes, EpsilonGreedyPolicy explorer) {
+		if (batch.shouldCommit()) {
+			batch.episodes = episodes;
+			batch.episodesTrained = episodesTrained;
+			batch.meanReward = batchReward / episodes;
+			batch.epsilon = explorer.getEpsilon();
+			batch.commit();
+		}
+		batchReward = 0.0;
+	}
+
+	/**
+	 * Plays one episode with one-step Q-learning updates.
+	 */
+	protected void runEpisode(EpsilonGreedyPolicy explorer) {
+		Game g = env.getCurrentGameState(); //get game state in episode
+
+		while (!g.isTerminal()) {
+			int s = g.hashCode();
+			int cell = explorer.selectCell(s, g.legalMoveMask()); //explore with probability epsilon, otherwise exploit
+			double reward = step(g, cell); //the game is now the state after the opponent's reply
 
-	    // Loop through the entries of the hashmap in the Q table
-	    for (Entry<Game, HashMap<Move, Double>> entry : qTable.entrySet()) {
-	        Game g = entry.getKey(); // Get game state
-	        Map<Move, Double> moveMap = entry.getValue(); // Get best move and Q value
+			//max over the next state's q-values, 0 if it is terminal
+			double newQVal = qTable.maxQ(g.hashCode(), g.legalMoveMask());
 
-	        Move maxMove = null;
-	        double maxQValue = Double.NEGATIVE_INFINITY;
+			double currentQVal = qTable.get(s, cell); //get current Q value and update it with the equation
+			double updatedQVal = (1 - alpha) * currentQVal + alpha * (reward + discount * newQVal);
 
-	        // Iterate through the entries in map and fine maximum Q Value
-	        for (Map.Entry<Move, Double> moveEntry : moveMap.entrySet()) {
-	            Move currentMove = moveEntry.getKey();
-	            double currentQValue = moveEntry.getValue();
+			update(s, cell, currentQVal, updatedQVal);
+		}
+	}
+
+	/**
+	 * Plays one episode with n-step Q-learning updates: the q-value of the move at
+	 * step t is moved towards the discounted rewards of the next {@link #nSteps}
+	 * steps plus the discounted max q-value of the state reached after them. This
+	 * is the uncorrected (no importance sampling) form, so exploratory moves
+	 * within the n steps bias the target slightly, as in Peng's Q(lambda).
+	 */
+	protected void runNStepEpisode(EpsilonGreedyPolicy explorer) {
+		Game g = env.getCurrentGameState();
+		int end = Integer.MAX_VALUE; // the number of steps in the episode, once known
+
+		for (int t = 0;; t++) {
+			if (t < end) {
+				trajStates[t] = g.hashCode();
+				trajCells[t] = explorer.selectCell(trajStates[t], g.legalMoveMask());
+				trajRewards[t] = step(g, trajCells[t]);
+				if (g.isTerminal())
+					end = t + 1;
+				else {
+					trajStates[t + 1] = g.hashCode();
+					trajMasks[t + 1] = g.legalMoveMask();
+				}
+			}
+
+			int tau = t - nSteps + 1; // the step whose q-value is updated now
+			if (tau >= 0) {
+				int last = Math.min(tau + nSteps, end);
+				double ret = 0.0;
+				double d = 1.0;
+				for (int i = tau; i < last; i++) {
+					ret += d * trajRewards[i];
+					d *= discount;
+				}
+				if (tau + nSteps < end)
+					ret += d * qTable.maxQ(trajStates[tau + nSteps], trajMasks[tau + nSteps]);
+
+				double q = qTable.get(trajStates[tau], trajCells[tau]);
+				update(trajStates[tau], trajCells[tau], q, q + alpha * (ret - q));
+			}
+
+			if (tau == end - 1)
+				break;
+		}
+	}
+
+	/**
+	 * Plays one episode with Watkins's Q(lambda): every one-step TD error is also
+	 * applied to the earlier moves of the episode, weighted by eligibility traces
+	 * that decay by {@code discount*lambda} per step. Traces are cut after an
+	 * exploratory (non-greedy) move, since the moves before it no longer lead to
+	 * the greedy return. A state cannot recur within a game, so the traces of
+	 * the moves played so far are simply kept in order.
+	 */
+	protected void runQLambdaEpisode(EpsilonGreedyPolicy explorer) {
+		Game g = env.getCurrentGameState();
+		int n = 0; // the number of moves played
+		int first = 0; // the first move with a live trace
+		int s = g.hashCode();
+		int cell = explorer.selectCell(s, g.legalMoveMask());
+
+		while (true) {
+			trajStates[n] = s;
+			trajCells[n] = cell;
+			trajTraces[n] = 1.0;
+			n++;
+
+			double target = step(g, cell);
+			boolean greedy = true;
+			if (!g.isTerminal()) {
+				s = g.hashCode();
+				int mask = g.legalMoveMask();
+				cell = explorer.selectCell(s, mask);
+				double best = qTable.maxQ(s, mask);
+				target += discount * best;
+				greedy = qTable.get(s, cell) == best;
+			}
+
+			double delta = target - qTable.get(trajStates[n - 1], trajCells[n - 1]);
+			for (int i = first; i < n; i++) {
+				double q = qTable.get(trajStates[i], trajCells[i]);
+				update(trajStates[i], trajCells[i], q, q + alpha * delta * trajTraces[i]);
+				trajTraces[i] *= discount * lambda;
+			}
+
+			if (g.isTerminal())
+				break;
+			if (!greedy)
+				first = n;
+		}
+	}
 
-	            if (currentQValue > maxQValue) {
-	                maxQValue = currentQValue;
-	                maxMove = currentMove;
-	            }
-	        }
+	/**
+	 * Stores an updated q-value, recording the change with the monitor if there
+	 * is one.
+	 */
+	private void update(int s, int cell, double oldQVal, double newQVal) {
+		UPDATES.increment();
+		qTable.set(s, cell, newQVal);
+		if (monitor != null)
+			monitor.recordUpdate(s, newQVal - oldQVal);
+	}
+
+	/**
+	 * Plays the move in {@code cell} in the environment, followed by the
+	 * opponent's reply.
+	 * 
+	 * @param g    the environment's game, which is updated
+	 * @param cell
+	 * @return the reward received
+	 */
+	private double step(Game g, int cell) {
+		Move selectedMove = new Move(g.whoseTurn, cell / 3, cell % 3);
+		try { //execute the move; the outcome is the state after the opponent's reply
+			double reward = env.executeMove(selectedMove).localReward;
+			batchReward += reward;
+			return reward;
+		} catch (IllegalMoveException e) { //Handle illegal moves and print an error
+			e.printStackTrace();
+			return 0.0;
+		}
+	}
 
-	        // Add game state and best move with the maximum Q Value to the policy
-	        optimalPolicy.policy.put(g, maxMove);
-	    }
+	/**
+	 * Sets the number of steps looked ahead by the update. 1 (the default) is
+	 * ordinary one-step Q-learning.
+	 * 
+	 * @param n
+	 */
+	public void setNSteps(int n) {
+		if (n < 1)
+			throw new IllegalArgumentException("The number of steps should be at least 1");
+		this.nSteps = n;
+	}
+
+	/**
+	 * Sets lambda. A lambda above 0 trains with Watkins's Q(lambda) instead of
+	 * n-step updates.
+	 * 
+	 * @param lambda between 0 and 1
+	 */
+	public void setLambda(double lambda) {
+		if (lambda < 0 || lambda > 1)
+			throw new IllegalArgumentException("Lambda should be between 0 and 1");
+		this.lambda = lambda;
+	}
+
+	/**
+	 * Checkpoints the q-table and episode count to {@code file} every
+	 * {@code every} episodes during training, and at the end of it. See
+	 * {@link QTableCheckpoint}.
+	 * 
+	 * @param file  the checkpoint file, or null to stop checkpointing
+	 * @param every the number of episodes between checkpoints
+	 */
+	public void setCheckpoint(Path file, int every) {
+		if (every < 1)
+			throw new IllegalArgumentException("The checkpoint interval should be at least one episode");
+
+		if (checkpoint != null)
+			try {
+				checkpoint.close();
+			} catch (IOException e) {
+				System.out.println("WARNING: could not write checkpoint " + checkpoint.file);
+				e.printStackTrace();
+			}
 
-	    return optimalPolicy;
+		this.checkpoint = file == null ? null : new QTableCheckpoint(file);
+		this.checkpointEvery = every;
+	}
+
+	/**
+	 * Logs every training episode to {@code transcript}.
+	 * 
+	 * @param transcript the transcript, or null to stop logging
+	 */
+	public void setTranscript(TranscriptWriter transcript) {
+		env.setTranscript(transcript, getClass().getSimpleName());
+	}
+
+	/**
+	 * Reports progress to {@code progress} during {@link #train()}, every 10% of
+	 * the episodes.
+	 * 
+	 * @param progress
+	 */
+	public void setTrainingProgress(TrainingProgress progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Monitors training with {@code monitor}: its metrics are reported every
+	 * check interval, and {@link #train()} stops early once it reports
+	 * convergence.
+	 * 
+	 * @param monitor the monitor, or null for none
+	 */
+	public void setConvergenceMonitor(ConvergenceMonitor monitor) {
+		this.monitor = monitor;
+	}
+
+	/**
+	 * 
+	 * @return true if the last call to {@link #train()} stopped early because
+	 *         training had converged
+	 */
+	public boolean hasConverged() {
+		return monitor != null && monitor.isConverged();
+	}
+
+	public void setNumEpisodes(int numEpisodes) {
+		this.numEpisodes = numEpisodes;
+	}
+
+	/**
+	 * 
+	 * @return the number of episodes trained so far, over all calls to
+	 *         {@link #train()}
+	 */
+	public long getEpisodesTrained() {
+		return episodesTrained;
+	}
+
+	/**
+	 * 
+	 * @return the exploration schedule used in training: {@link #epsilonSchedule}
+	 *         if one was set, or else a constant {@link #epsilon}.
+	 */
+	public EpsilonSchedule getEpsilonSchedule() {
+		return epsilonSchedule == null ? EpsilonSchedule.constant(epsilon) : epsilonSchedule;
+	}
+
+	/**
+	 * Sets the exploration schedule used by {@link #train()}
+	 * 
+	 * @param schedule
+	 */
+	public void setEpsilonSchedule(EpsilonSchedule schedule) {
+		this.epsilonSchedule = schedule;
+	}
+
+	/**
+	 * Extracts the greedy policy of the q-values in the {@code qTable}. The policy
+	 * is over a copy of the table, so it does not change if training continues.
+	 *
+	 * @return the policy currently inherent in the QTable
+	 */
+	public Policy extractPolicy() {
+		return new EpsilonGreedyPolicy(new QTable(qTable));
 	}
-		/*
-		 * YOUR CODE HERE
-		 */
 
 	public static void main(String a[]) throws IllegalMoveException {
 		// Test method to play your agent against a human agent (yourself).
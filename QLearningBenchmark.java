@@ -0,0 +1,117 @@
+package ticTacToe;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures how many episodes one-step Q-learning, n-step Q-learning and
+ * Watkins's Q(lambda) need before their greedy policy is optimal against the
+ * random opponent.
+ *
+ * The optimal value of the empty board, V*, is taken from a
+ * {@link ValueIterationAgent}. Every {@link #CHUNK} episodes the greedy policy
+ * of each learner is evaluated exactly on the {@link TTTMDP} and the learner
+ * counts as converged once its value is within {@link #TOLERANCE} of V*. All
+ * variants explore with the same decaying epsilon and are trained from the same
+ * seeds.
+ *
+ * Usage: QLearningBenchmark [seeds] [max episodes]
+ *
+ */
+public class QLearningBenchmark {
+
+	/**
+	 * the number of episodes between evaluations
+	 */
+	static final int CHUNK = 250;
+
+	/**
+	 * how close (relative to V*) the greedy policy's value must be to count as
+	 * optimal. With a constant learning rate the q-values keep fluctuating, and
+	 * near-ties in rarely visited states keep the exact optimum out of reach of
+	 * every variant, so a small tolerance is allowed.
+	 */
+	static final double TOLERANCE = 0.05;
+
+	/**
+	 * The exact value of {@code g} under policy {@code p} against the random
+	 * opponent of the {@code mdp}.
+	 *
+	 * @param memo values already computed, by game hash
+	 */
+	static double policyValue(Policy p, Game g, TTTMDP mdp, double discount, Map<Integer, Double> memo) {
+		if (g.isTerminal())
+			return 0.0;
+
+		Double known = memo.get(g.hashCode());
+		if (known != null)
+			return known;
+
+		double v = 0.0;
+		for (TransitionProb t : mdp.generateTransitions(g, p.getMove(g)))
+			v += t.prob * (t.outcome.localReward + discount * policyValue(p, t.outcome.sPrime, mdp, discount, memo));
+
+		memo.put(g.hashCode(), v);
+		return v;
+	}
+
+	/**
+	 * Trains a fresh learner in chunks until its greedy policy is optimal.
+	 *
+	 * @return the number of episodes needed, or -1 if it did not converge within
+	 *         {@code maxEpisodes}
+	 */
+	static int episodesToOptimal(int nSteps, double lambda, long seed, double optimal, int maxEpisodes) {
+		Rng.setSeed(seed);
+		QLearningAgent agent = new QLearningAgent(new RandomAgent(Rng.split()), 0.1, 0.9,
+				EpsilonSchedule.linear(0.3, 0.01, maxEpisodes / 2), Rng.split());
+		agent.setNSteps(nSteps);
+		agent.setLambda(lambda);
+		agent.setNumEpisodes(CHUNK);
+
+		TTTMDP mdp = new TTTMDP();
+		Policy greedy = new EpsilonGreedyPolicy(agent.qTable);
+		for (int episodes = CHUNK; episodes <= maxEpisodes; episodes += CHUNK) {
+			agent.train();
+			double v = policyValue(greedy, new Game(), mdp, agent.discount, new HashMap<Integer, Double>());
+			if (Math.abs(v - optimal) <= TOLERANCE * Math.abs(optimal))
+				return episodes;
+		}
+
+		return -1;
+	}
+
+	public static void main(String a[]) {
+		int seeds = a.length > 0 ? Integer.parseInt(a[0]) : 10;
+		int maxEpisodes = a.length > 1 ? Integer.parseInt(a[1]) : 50000;
+
+		ValueIterationAgent vi = new ValueIterationAgent(0.9); // trains, so the values are available
+		double optimal = vi.valueFunction.get(new Game());
+		System.out.println("V*(empty board) = " + optimal);
+
+		String[] names = { "one-step Q", "2-step Q", "3-step Q", "Q(lambda=0.5)", "Q(lambda=0.8)" };
+		int[] steps = { 1, 2, 3, 1, 1 };
+		double[] lambdas = { 0.0, 0.0, 0.0, 0.5, 0.8 };
+
+		for (int v = 0; v < names.length; v++) {
+			int[] episodes = new int[seeds];
+			int failed = 0;
+			long start = System.nanoTime();
+			for (int seed = 0; seed < seeds; seed++) {
+				episodes[seed] = episodesToOptimal(steps[v], lambdas[v], seed, optimal, maxEpisodes);
+				if (episodes[seed] < 0) {
+					episodes[seed] = Integer.MAX_VALUE;
+					failed++;
+				}
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			Arrays.sort(episodes);
+			String median = episodes[seeds / 2] == Integer.MAX_VALUE ? ">" + maxEpisodes : "" + episodes[seeds / 2];
+			System.out.printf("%-14s median episodes to optimal: %8s   not converged: %d/%d   (%.1fs)%n", names[v],
+					median, failed, seeds, seconds);
+		}
+	}
+
+}
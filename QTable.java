@@ -1,59 +1,127 @@
 package ticTacToe;
 
-import java.util.HashMap;
 /**
- * This class a simple implementation of a Q-Table. It's a subclass of {@link java.util.HashMap}, so all the methods from 
- * that class are available. Two methods for adding and retrieving q-values to/from the table are provided.
- * 
+ * This class a simple implementation of a Q-Table, stored as a flat array of
+ * primitive doubles: one row of 9 q-values (one per cell) for every game hash
+ * (see {@link Game#hashCode}). All q-values start at 0.
+ *
+ * Two methods for adding and retrieving q-values to/from the table using
+ * {@link Game} and {@link Move} objects are provided, as well as the primitive
+ * accessors used by the learners, which address a q-state by the game hash and
+ * the cell index {@code 3*x+y} of the move.
+ *
  * @author ae187
  *
  */
-public class QTable extends HashMap<Game, HashMap<Move,Double>> {
+public class QTable {
+
+	/**
+	 * the number of possible game hashes (2222222222 in base 3, plus one)
+	 */
+	public static final int NUM_STATES = 59049;
 
-	
-	public QTable()
-	{
-		super();
+	/**
+	 * the q-values, row {@code state} holds the values of cells 0 to 8
+	 */
+	final double[] q;
+
+	public QTable() {
+		q = new double[NUM_STATES * 9];
 	}
-	
+
 	/**
-	 * 
+	 * A copy of {@code other}
+	 *
+	 * @param other
 	 */
-	private static final long serialVersionUID = 1L;
-	
+	public QTable(QTable other) {
+		q = other.q.clone();
+	}
+
 	/**
-	 * 
+	 *
 	 * @param g
 	 * @param m
-	 * @return the q value associated with the q-state {@code (g,m)}, where game is a {@link Game} object 
-	 * and m is a {@link Move} object}
-	 */
-	public Double getQValue(Game g, Move m)
-	{
-		if (containsKey(g))
-		{
-			HashMap<Move,Double> moves=get(g);
-			if (moves.containsKey(m))
-				return moves.get(m);
-		}
-		
-		return null;
+	 * @return the q value associated with the q-state {@code (g,m)}, where game is
+	 *         a {@link Game} object and m is a {@link Move} object}
+	 */
+	public double getQValue(Game g, Move m) {
+		return q[g.hashCode() * 9 + m.x * 3 + m.y];
 	}
-	
+
 	/**
-	 * Adds the q-value mapping (g,m)->v to the q-table represented by this map.
+	 * Adds the q-value mapping (g,m)->v to the q-table.
+	 *
 	 * @param g
 	 * @param m
 	 * @param v
 	 */
-	public void addQValue(Game g, Move m, Double v)
-	{
-		if (!containsKey(g))
-			this.put(g, new HashMap<Move,Double>());
-		
-		this.get(g).put(m, v);
+	public void addQValue(Game g, Move m, double v) {
+		q[g.hashCode() * 9 + m.x * 3 + m.y] = v;
+	}
+
+	/**
+	 *
+	 * @param state the game hash
+	 * @param cell  the cell index of the move, {@code 3*x+y}
+	 * @return the q-value of the q-state (state, cell)
+	 */
+	public double get(int state, int cell) {
+		return q[state * 9 + cell];
+	}
+
+	public void set(int state, int cell, double v) {
+		q[state * 9 + cell] = v;
+	}
+
+	/**
+	 *
+	 * @param state     the game hash
+	 * @param legalMask the legal moves in {@code state}, see
+	 *                  {@link Game#legalMoveMask()}
+	 * @return the highest q-value over the legal moves, or 0 if there are none
+	 *         (i.e. the state is terminal)
+	 */
+	public double maxQ(int state, int legalMask) {
+		if (legalMask == 0)
+			return 0.0;
+
+		int row = state * 9;
+		double max = Double.NEGATIVE_INFINITY;
+		for (int m = legalMask; m != 0; m &= m - 1)
+			max = Math.max(max, q[row + Integer.numberOfTrailingZeros(m)]);
+
+		return max;
+	}
+
+	/**
+	 * The greedy move. Ties go to the lowest cell index.
+	 *
+	 * @param state     the game hash
+	 * @param legalMask the legal moves in {@code state}
+	 * @return the cell index of the legal move with the highest q-value, or -1 if
+	 *         there are no legal moves
+	 */
+	public int argmax(int state, int legalMask) {
+		int row = state * 9;
+		int best = -1;
+		double max = Double.NEGATIVE_INFINITY;
+		for (int m = legalMask; m != 0; m &= m - 1) {
+			int cell = Integer.numberOfTrailingZeros(m);
+			double v = q[row + cell];
+			boolean better = v > max;
+			best = better ? cell : best;
+			max = better ? v : max;
+		}
+
+		return best;
+	}
+
+	/**
+	 * Sets every q-value back to 0.
+	 */
+	public void clear() {
+		java.util.Arrays.fill(q, 0.0);
 	}
-	
-	
 
 }
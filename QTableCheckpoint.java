@@ -0,0 +1,215 @@
+package ticTacToe;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe checkpoints of a {@link QTable} and the number of episodes it has
+ * been trained for.
+ *
+ * A checkpoint is written through a memory-mapped temporary file next to the
+ * target, forced to disk, and then atomically renamed over the target. A crash
+ * at any point therefore leaves either the previous checkpoint or the new one,
+ * never a torn file. The file layout (little-endian) is:
+ *
+ * <pre>
+ * int    magic "QTCK"
+ * int    version
+ * long   episodes trained
+ * int    number of q-values
+ * int    reserved
+ * long   CRC32 of the q-values
+ * double q-values[]
+ * </pre>
+ *
+ * An instance writes checkpoints on its own background thread:
+ * {@link #save(QTable, long)} only copies the table on the calling (training)
+ * thread. The thread is started by the first checkpoint and stops once no
+ * checkpoint has been taken for a second, so an instance that is no longer
+ * used, or never {@link #close()}d, leaves no thread behind. The static
+ * {@link #write} and {@link #read} methods work synchronously.
+ *
+ */
+public class QTableCheckpoint implements AutoCloseable {
+
+	static final int MAGIC = 0x5154434B; // "QTCK"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 32;
+
+	final Path file;
+
+	/**
+	 * writes checkpoints one at a time, in order, on a thread that times out
+	 * when idle
+	 */
+	final ThreadPoolExecutor writer;
+
+	/**
+	 * the checkpoint being written, if any
+	 */
+	Future<?> pending = null;
+
+	/**
+	 *
+	 * @param file where checkpoints are kept
+	 */
+	public QTableCheckpoint(Path file) {
+		this.file = file;
+		this.writer = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+			Thread t = new Thread(r, "qtable-checkpoint");
+			t.setDaemon(true);
+			return t;
+		});
+		writer.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Takes a checkpoint. The table is copied before returning and written in
+	 * the background. If the previous checkpoint is still being written this one
+	 * is skipped, since a newer one will follow.
+	 *
+	 * @param qTable
+	 * @param episodes the number of episodes {@code qTable} has been trained for
+	 * @return true if the checkpoint was taken
+	 */
+	public synchronized boolean save(QTable qTable, long episodes) {
+		if (pending != null && !pending.isDone())
+			return false;
+
+		double[] copy = qTable.q.clone();
+		pending = writer.submit(() -> {
+			write(file, copy, episodes);
+			return null;
+		});
+		return true;
+	}
+
+	/**
+	 * Waits for the checkpoint being written, if any.
+	 *
+	 * @throws IOException if it could not be written
+	 */
+	public synchronized void await() throws IOException {
+		if (pending == null)
+			return;
+
+		try {
+			pending.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing checkpoint " + file, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException("Could not write checkpoint " + file, e.getCause());
+		}
+	}
+
+	/**
+	 * Waits for the last checkpoint and stops the background thread.
+	 */
+	public void close() throws IOException {
+		try {
+			await();
+		} finally {
+			writer.shutdown();
+		}
+	}
+
+	/**
+	 * Writes a checkpoint: to a temporary file first, which is then renamed over
+	 * {@code file}.
+	 *
+	 * @param file
+	 * @param q        the q-values
+	 * @param episodes the number of episodes trained
+	 * @throws IOException
+	 */
+	public static void write(Path file, double[] q, long episodes) throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + 8L * q.length);
+			buf.order(ByteOrder.LITTLE_ENDIAN);
+			buf.position(HEADER_BYTES);
+			buf.asDoubleBuffer().put(q);
+
+			buf.position(HEADER_BYTES);
+			CRC32 crc = new CRC32();
+			crc.update(buf);
+
+			buf.putInt(0, MAGIC);
+			buf.putInt(4, VERSION);
+			buf.putLong(8, episodes);
+			buf.putInt(16, q.length);
+			buf.putInt(20, 0);
+			buf.putLong(24, crc.getValue());
+			buf.force();
+		}
+		Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * The contents of a checkpoint file.
+	 */
+	public static class Snapshot {
+		public final QTable qTable;
+		public final long episodes;
+
+		Snapshot(QTable qTable, long episodes) {
+			this.qTable = qTable;
+			this.episodes = episodes;
+		}
+	}
+
+	/**
+	 * Reads a checkpoint, checking its header and checksum.
+	 *
+	 * @param file
+	 * @return the table and episode count stored
+	 * @throws IOException if the file cannot be read or is not a valid
+	 *                     checkpoint
+	 */
+	public static Snapshot read(Path file) throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (ch.size() < HEADER_BYTES)
+				throw new IOException(file + " is not a q-table checkpoint");
+
+			MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			buf.order(ByteOrder.LITTLE_ENDIAN);
+			if (buf.getInt(0) != MAGIC)
+				throw new IOException(file + " is not a q-table checkpoint");
+			if (buf.getInt(4) != VERSION)
+				throw new IOException(file + " has unsupported checkpoint version " + buf.getInt(4));
+
+			long episodes = buf.getLong(8);
+			int length = buf.getInt(16);
+			if (length != QTable.NUM_STATES * 9 || ch.size() != HEADER_BYTES + 8L * length)
+				throw new IOException(file + " does not hold a q-table of the expected size");
+
+			buf.position(HEADER_BYTES);
+			CRC32 crc = new CRC32();
+			crc.update(buf);
+			if (crc.getValue() != buf.getLong(24))
+				throw new IOException(file + " is corrupt: checksum mismatch");
+
+			QTable qTable = new QTable();
+			buf.position(HEADER_BYTES);
+			buf.asDoubleBuffer().get(qTable.q);
+			return new Snapshot(qTable, episodes);
+		}
+	}
+
+}
@@ -1,5 +1,7 @@
 package ticTacToe;
 
+import java.util.SplittableRandom;
+
 
 /**
  * A random agent, i.e. ones with a {@link RandomPolicy} that picks a move randomly from all available moves with equal probability.  
@@ -16,6 +18,15 @@ public class RandomAgent extends Agent {
 		
 	}
 	
+	/**
+	 * A random agent drawing its moves from {@code r}
+	 * @param r
+	 */
+	public RandomAgent(SplittableRandom r) {
+		super(new RandomPolicy(r));
+		
+	}
+	
 	
 
 }
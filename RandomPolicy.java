@@ -1,9 +1,7 @@
 package ticTacToe;
 
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 /**
  * This is a Policy which picks an move randomly with equal probability from the available moves. 
@@ -12,25 +10,32 @@ import java.util.Random;
  */
 public class RandomPolicy extends Policy{
 
-	Random r = new Random();
+	SplittableRandom r;
+	
+	/**
+	 * A random policy with its own generator split from {@link Rng}
+	 */
+	public RandomPolicy()
+	{
+		this(Rng.split());
+	}
+	
+	/**
+	 * A random policy drawing from {@code r}. The generator must not be shared with another thread.
+	 * @param r
+	 */
+	public RandomPolicy(SplittableRandom r)
+	{
+		this.r=r;
+	}
 	
 	@Override
 	public Move getMove(Game g) {
 		
+		//picks the same empty cell, from the same draw, as listing the empty cells in order would
+		int cell=EpsilonGreedyPolicy.randomCell(g.marks(' '), r);
 		
-		List<IndexPair> pairs=new ArrayList<IndexPair>();
-		
-		for(int i=0;i<3;i++)
-			for(int j=0;j<3;j++)
-			{
-				if (g.getBoard()[i][j]==' ')
-					pairs.add(new IndexPair(i,j));
-					
-			}
-		
-		IndexPair random=pairs.get(r.nextInt(pairs.size()));
-		
-		return new Move(g.whoseTurn, random.x, random.y);
+		return new Move(g.whoseTurn, cell/3, cell%3);
 	}
 	
 	
@@ -38,15 +43,3 @@ public class RandomPolicy extends Policy{
 
 }
 
-
-class IndexPair{
-	
-	public int x;
-	public int y;
-	
-	IndexPair(int x, int y)
-	{
-		this.x=x;
-		this.y=y;
-	}
-}
\ No newline at end of file
@@ -0,0 +1,97 @@
+package ticTacToe;
+
+import java.util.SplittableRandom;
+
+/**
+ * The central source of randomness for policies, agents and trainers.
+ *
+ * A single root {@link SplittableRandom} is seeded once - from the
+ * {@code ttt.seed} system property, from {@link #setSeed(long)}, or from the
+ * clock - and every consumer takes its own generator with {@link #split()}.
+ * Split generators are statistically independent and are never shared, so
+ * parallel runs do not contend on a lock, and a whole run can be reproduced
+ * from one seed as long as the generators are split in the same order.
+ *
+ * Note: {@link SplittableRandom} is not thread safe. Split one generator per
+ * thread, environment or policy rather than sharing one between threads.
+ *
+ */
+public final class Rng {
+
+	/**
+	 * the seed the root generator was last seeded with
+	 */
+	private static long seed = initialSeed();
+
+	private static SplittableRandom root = new SplittableRandom(seed);
+
+	/**
+	 * true if the seed was chosen by the user rather than taken from the clock
+	 */
+	private static boolean seeded = System.getProperty("ttt.seed") != null;
+
+	/**
+	 * Per-thread generators for code that has no generator threaded through to it.
+	 * Each is split from the root the first time a thread asks for it.
+	 */
+	private static final ThreadLocal<SplittableRandom> perThread = ThreadLocal.withInitial(Rng::split);
+
+	private Rng() {
+	}
+
+	private static long initialSeed() {
+		String s = System.getProperty("ttt.seed");
+		if (s != null)
+			return Long.parseLong(s);
+
+		return System.nanoTime() ^ System.currentTimeMillis();
+	}
+
+	/**
+	 * Reseeds the root generator. Generators split before this call are not
+	 * affected, so call it before creating any agents or policies.
+	 *
+	 * @param s the new seed
+	 */
+	public static synchronized void setSeed(long s) {
+		seed = s;
+		seeded = true;
+		root = new SplittableRandom(s);
+	}
+
+	/**
+	 *
+	 * @return true if the seed was set explicitly (by {@link #setSeed(long)} or
+	 *         the {@code ttt.seed} property), i.e. if runs are meant to be
+	 *         reproducible
+	 */
+	public static synchronized boolean isSeeded() {
+		return seeded;
+	}
+
+	/**
+	 *
+	 * @return the seed the root generator was last seeded with
+	 */
+	public static synchronized long getSeed() {
+		return seed;
+	}
+
+	/**
+	 *
+	 * @return a new generator, independent of every other generator split from
+	 *         the root
+	 */
+	public static synchronized SplittableRandom split() {
+		return root.split();
+	}
+
+	/**
+	 *
+	 * @return the calling thread's own generator
+	 */
+	public static SplittableRandom current() {
+		return perThread.get();
+	}
+
+}
@@ -0,0 +1,15 @@
+package ticTacToe;
+
+/**
+ * An agent that plays perfectly, by the rules of {@link RulePolicy}, with no
+ * training; e.g. a strong opponent in a {@link TTTEnvironment}:
+ * {@code new TTTEnvironment(new RuleAgent())}.
+ *
+ */
+public class RuleAgent extends Agent {
+
+	public RuleAgent() {
+		super(new RulePolicy());
+	}
+
+}
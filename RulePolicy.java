@@ -0,0 +1,266 @@
+package ticTacToe;
+
+/**
+ * A policy that plays perfectly without any training, by the classic rules of
+ * Tic Tac Toe, taking the first that applies:
+ *
+ * <ol>
+ * <li>win: complete a line of your own;</li>
+ * <li>block: stop the opponent completing a line;</li>
+ * <li>fork: make two lines that each need one more mark;</li>
+ * <li>block fork: leave the opponent no fork. If they have one fork, take its
+ * cell; otherwise make a line of two, as long as the blocks it forces do not
+ * end in a fork for them, or else play any cell that leaves them none;</li>
+ * <li>center;</li>
+ * <li>opposite corner: the corner opposite one of the opponent's;</li>
+ * <li>empty corner;</li>
+ * <li>empty side.</li>
+ * </ol>
+ *
+ * Where a rule allows several cells, the lowest is played. The rules are
+ * evaluated once, for every reachable position (see {@link StateSpace}), when
+ * the class is first used, and the moves kept in one table of bytes by
+ * position id, shared by every instance; a move is then a lookup. Positions
+ * that cannot be reached in play are evaluated when asked.
+ *
+ * See {@link #main} for a check that the policy never loses.
+ *
+ */
+public class RulePolicy extends Policy {
+
+	private static final int CENTER = 1 << 4;
+	private static final int CORNERS = 1 << 0 | 1 << 2 | 1 << 6 | 1 << 8;
+	private static final int SIDES = 1 << 1 | 1 << 3 | 1 << 5 | 1 << 7;
+
+	/**
+	 * the outcome of every board for the player to move, by
+	 * {@code BitBoard.encode(mine, theirs, true)}, plus two; 0 until it is known
+	 */
+	private static final byte[] outcomes = new byte[QTable.NUM_STATES];
+
+	private static final StateSpace space = StateSpace.get();
+
+	/**
+	 * the cell to play in every reachable position, by id, or
+	 * {@link PolicyFile#NO_MOVE} if the game is over; built when the class is
+	 * first used
+	 */
+	private static final byte[] table = buildTable();
+
+	private static byte[] buildTable() {
+		byte[] cells = new byte[space.size()];
+		for (int id = 0; id < cells.length; id++) {
+			Position p = space.position(id);
+			cells[id] = p.isTerminal() ? PolicyFile.NO_MOVE : (byte) evaluate(p);
+		}
+		return cells;
+	}
+
+	/**
+	 *
+	 * @param mine   the cells of the player to move
+	 * @param theirs the cells of the other player
+	 * @param free   the free cells
+	 * @return the cells in which the player to move would make a fork
+	 */
+	static int forks(int mine, int theirs, int free) {
+		int forks = 0;
+		for (int f = free; f != 0; f &= f - 1) {
+			int bit = f & -f;
+			if (Integer.bitCount(BitBoard.threats(mine | bit) & free & ~bit) >= 2)
+				forks |= bit;
+		}
+		return forks;
+	}
+
+	/**
+	 *
+	 * @param p a position in which the game is not over
+	 * @return the cell the rules play in {@code p}
+	 */
+	static int evaluate(Position p) {
+		int mine = p.isXToMove() ? p.xMask() : p.oMask();
+		int theirs = p.isXToMove() ? p.oMask() : p.xMask();
+		int free = p.legalMoves();
+
+		int cells = BitBoard.threats(mine) & free;
+		if (cells == 0)
+			cells = BitBoard.threats(theirs) & free;
+		if (cells == 0)
+			cells = forks(mine, theirs, free);
+		if (cells == 0)
+			cells = blockFork(mine, theirs, free);
+		if (cells == 0)
+			cells = CENTER & free;
+		if (cells == 0)
+			for (int corner = 0; corner < 9; corner += 2)
+				if ((CORNERS >> corner & 1) != 0 && (theirs >> corner & 1) != 0 && (free >> 8 - corner & 1) != 0)
+					cells |= 1 << 8 - corner;
+		if (cells == 0)
+			cells = CORNERS & free;
+		if (cells == 0)
+			cells = SIDES & free;
+
+		return Integer.numberOfTrailingZeros(cells);
+	}
+
+	/**
+	 *
+	 * @return the cells that leave the opponent no fork, best first as the rules
+	 *         have them, or 0 if they have no fork to block or none can be blocked
+	 */
+	private static int blockFork(int mine, int theirs, int free) {
+		int theirForks = forks(theirs, mine, free);
+		if (theirForks == 0)
+			return 0;
+
+		// a line of two only blocks a fork if no chain of forced blocks ends in
+		// one, so every cell is checked for what the opponent can force after it
+		int safe = 0;
+		int attacking = 0;
+		for (int f = free; f != 0; f &= f - 1) {
+			int bit = f & -f;
+			if (outcome(theirs, mine | bit) > 0)
+				continue;
+			if ((BitBoard.threats(mine | bit) & free & ~bit) != 0)
+				attacking |= bit;
+			else
+				safe |= bit;
+		}
+
+		if (Integer.bitCount(theirForks) == 1 && ((safe | attacking) & theirForks) != 0)
+			return theirForks;
+		return attacking != 0 ? attacking : safe;
+	}
+
+	/**
+	 * Solves a board, with best play from both sides. Boards are solved once;
+	 * threads racing to solve the same one store the same outcome.
+	 *
+	 * @param mine   the cells of the player to move
+	 * @param theirs the cells of the other player
+	 * @return 1 if the player to move can force a win, 0 a draw, -1 if they lose
+	 */
+	static int outcome(int mine, int theirs) {
+		int key = BitBoard.encode(mine, theirs, true);
+		if (outcomes[key] != 0)
+			return outcomes[key] - 2;
+
+		int free = BitBoard.FULL & ~(mine | theirs);
+		int best;
+		if (BitBoard.hasLine(theirs))
+			best = -1;
+		else if (BitBoard.hasLine(mine))
+			best = 1;
+		else if (free == 0)
+			best = 0;
+		else {
+			best = -1;
+			for (int f = free; f != 0 && best < 1; f &= f - 1)
+				best = Math.max(best, -outcome(theirs, mine | (f & -f)));
+		}
+
+		outcomes[key] = (byte) (best + 2);
+		return best;
+	}
+
+	/**
+	 *
+	 * @param hash a game hash
+	 * @return the cell to play, or -1 if the game is over
+	 */
+	static int cellFor(int hash) {
+		int id = space.id(hash);
+		if (id >= 0) {
+			byte cell = table[id];
+			return cell == PolicyFile.NO_MOVE ? -1 : cell;
+		}
+
+		Position p = Position.ofHash(hash);
+		return p.isTerminal() ? -1 : evaluate(p);
+	}
+
+	@Override
+	public Move getMove(Game g) {
+		int cell = cellFor(g.hashCode());
+		return cell < 0 ? null : new Move(g.whoseTurn, cell / 3, cell % 3);
+	}
+
+	@Override
+	public int getCell(Position p) {
+		return cellFor(p.hash());
+	}
+
+	/**
+	 * Checks every line of play from an empty board, with either player
+	 * starting, the rules playing one side and the opponent trying every move,
+	 * and prints how many of those games the rules lose; then how many reachable
+	 * positions that are not lost the rules play into a loss. Then plays the
+	 * rules against the other agents, from both sides.
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		System.out.println("Rule table for " + table.length + " positions");
+
+		long[] results = new long[4];
+		for (boolean rulesAreX : new boolean[] { true, false })
+			for (Position p : new Position[] { Position.X_FIRST, Position.O_FIRST })
+				walk(p, rulesAreX, results);
+		System.out.println(String.format("Every line of play: won %d, lost %d, drawn %d", results[0], results[1],
+				results[2]));
+
+		int blunders = 0;
+		for (int id = 0; id < space.size(); id++) {
+			Position p = space.position(id);
+			if (p.isTerminal())
+				continue;
+			int mine = p.isXToMove() ? p.xMask() : p.oMask();
+			int theirs = p.isXToMove() ? p.oMask() : p.xMask();
+			int cell = table[id];
+			if (outcome(mine, theirs) >= 0 && outcome(theirs, mine | 1 << cell) > 0)
+				blunders++;
+		}
+		System.out.println("Positions not lost that the rules lose: " + blunders);
+
+		long games = 100_000;
+		for (String name : new String[] { "random", "agg", "def" }) {
+			java.util.function.Supplier<Agent> other = name.equals("random") ? RandomAgent::new
+					: name.equals("agg") ? AggressiveAgent::new : DefensiveAgent::new;
+			for (char starter : new char[] { 'X', 'O' }) {
+				MatchRunner asX = new MatchRunner(RuleAgent::new, other);
+				asX.setStarter(starter);
+				MatchRunner asO = new MatchRunner(other, RuleAgent::new);
+				asO.setStarter(starter);
+				System.out.println("rule (X) vs " + name + ", " + starter + " starts: " + asX.run(games, 1));
+				System.out.println(name + " vs rule (O), " + starter + " starts: " + asO.run(games, 1));
+			}
+		}
+	}
+
+	/**
+	 * Counts the results of every game from {@code p}, with the rules playing X
+	 * or O and the other side playing every legal move.
+	 *
+	 * @param results won, lost and drawn games so far, for the rules
+	 */
+	private static void walk(Position p, boolean rulesAreX, long[] results) {
+		if (p.isTerminal()) {
+			int state = p.state();
+			if (state == Game.DRAW)
+				results[2]++;
+			else if ((state == Game.X_WON) == rulesAreX)
+				results[0]++;
+			else
+				results[1]++;
+			return;
+		}
+
+		if (p.isXToMove() == rulesAreX)
+			walk(p.play(cellFor(p.hash())), rulesAreX, results);
+		else
+			for (int free = p.legalMoves(); free != 0; free &= free - 1)
+				walk(p.play(Integer.numberOfTrailingZeros(free)), rulesAreX, results);
+	}
+
+}
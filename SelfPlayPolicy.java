@@ -0,0 +1,34 @@
+package ticTacToe;
+
+/**
+ * The greedy policy of a side-normalized {@link QTable}, as learned by
+ * {@link SelfPlayTrainer}. Positions are looked up from the point of view of
+ * the agent whose turn it is (see {@link SelfPlayTrainer#normalize}), so the
+ * same policy can play either 'X' or 'O'.
+ *
+ */
+public class SelfPlayPolicy extends EpsilonGreedyPolicy {
+
+	public SelfPlayPolicy(QTable qTable) {
+		super(qTable);
+	}
+
+	@Override
+	protected int stateOf(Game g) {
+		int xs = g.marks('X');
+		int os = g.marks('O');
+		if (g.whoseTurn.getName() == 'X')
+			return SelfPlayTrainer.normalize(xs, os);
+
+		return SelfPlayTrainer.normalize(os, xs);
+	}
+
+	@Override
+	protected int stateOf(Position p) {
+		if (p.isXToMove())
+			return SelfPlayTrainer.normalize(p.xMask(), p.oMask());
+
+		return SelfPlayTrainer.normalize(p.oMask(), p.xMask());
+	}
+
+}
@@ -0,0 +1,279 @@
+package ticTacToe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Trains agents for both seats at once by Q-learning from self-play.
+ *
+ * Both sides of every game learn into one shared, side-normalized
+ * {@link QTable}: a position is always stored as seen by the agent whose turn it
+ * is, with its own marks as 'X' and the opponent's as 'O' (see
+ * {@link #normalize}). The value of a position for the opponent is the negation
+ * of its value for us, so a move that does not end the game is backed up
+ * towards {@code -discount * max Q(s')}, where {@code s'} is the next position
+ * normalized for the opponent. Every game therefore updates both
+ * perspectives, and the resulting {@link SelfPlayPolicy} plays as 'X' or 'O'.
+ *
+ * Games are played in batches: a batch is split between {@link #threads}
+ * workers that play epsilon-greedily against the current table, each with its
+ * own generator, and the recorded games are then replayed into the table in a
+ * fixed order. Training is therefore reproducible from a seeded {@link Rng}
+ * for a given number of threads.
+ *
+ */
+public class SelfPlayTrainer {
+
+	/**
+	 * The shared, side-normalized q-table.
+	 */
+	QTable qTable = new QTable();
+
+	/**
+	 * The learning rate
+	 */
+	double alpha = 0.1;
+
+	/**
+	 * The discount factor
+	 */
+	double discount = 0.9;
+
+	/**
+	 * The reward for the move that wins the game. Losing is worth
+	 * {@code -winReward} to the other side.
+	 */
+	double winReward = 10.0;
+
+	/**
+	 * The reward for the move that fills the board without a winner.
+	 */
+	double drawReward = 0.0;
+
+	EpsilonSchedule schedule = EpsilonSchedule.constant(0.1);
+
+	/**
+	 * the number of worker threads playing games
+	 */
+	int threads = 1;
+
+	/**
+	 * the number of games played against the same table before it is updated
+	 */
+	int batchSize = 1024;
+
+	/**
+	 * the number of games trained on so far
+	 */
+	long gamesPlayed = 0;
+
+	/**
+	 * one generator per worker
+	 */
+	SplittableRandom[] randoms;
+
+	public SelfPlayTrainer() {
+		this(0.1, 0.9, EpsilonSchedule.constant(0.1), 1);
+	}
+
+	/**
+	 *
+	 * @param alpha    the learning rate
+	 * @param discount the discount factor
+	 * @param schedule the exploration schedule, indexed by game number
+	 * @param threads  the number of threads to play games on
+	 */
+	public SelfPlayTrainer(double alpha, double discount, EpsilonSchedule schedule, int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is needed");
+
+		this.alpha = alpha;
+		this.discount = discount;
+		this.schedule = schedule;
+		this.threads = threads;
+		this.randoms = new SplittableRandom[threads];
+		for (int i = 0; i < threads; i++)
+			randoms[i] = Rng.split();
+	}
+
+	/**
+	 * Sets the rewards for winning and drawing (from the point of view of the
+	 * agent making the last move).
+	 *
+	 * @param win
+	 * @param draw
+	 */
+	public void setRewards(double win, double draw) {
+		this.winReward = win;
+		this.drawReward = draw;
+	}
+
+	/**
+	 * The row of the side-normalized table for a position.
+	 *
+	 * @param mine   the marks of the agent whose turn it is
+	 * @param theirs the marks of the opponent
+	 * @return the hash of the board with {@code mine} as X's, {@code theirs} as
+	 *         O's and X to move
+	 */
+	public static int normalize(int mine, int theirs) {
+		return BitBoard.encode(mine, theirs, true);
+	}
+
+	/**
+	 * Plays and learns from {@code numGames} self-play games.
+	 *
+	 * @param numGames
+	 */
+	public void train(long numGames) {
+		ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+		try {
+			byte[][] records = new byte[threads][];
+			while (numGames > 0) {
+				int batch = (int) Math.min(batchSize, numGames);
+				playBatch(pool, batch, records);
+				for (int w = 0; w < threads; w++)
+					learn(records[w]);
+
+				gamesPlayed += batch;
+				numGames -= batch;
+			}
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+		}
+	}
+
+	/**
+	 * Plays a batch of games against the current table, split between the
+	 * workers. Worker {@code w}'s games are left in {@code records[w]}.
+	 */
+	private void playBatch(ExecutorService pool, int batch, byte[][] records) {
+		long first = gamesPlayed;
+		int share = (batch + threads - 1) / threads;
+		if (pool == null) {
+			records[0] = play(0, first, batch);
+			return;
+		}
+
+		List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+		for (int w = 0; w < threads; w++) {
+			int worker = w;
+			int n = Math.max(0, Math.min(share, batch - w * share));
+			long from = first + (long) w * share;
+			futures.add(pool.submit(() -> play(worker, from, n)));
+		}
+
+		try {
+			for (int w = 0; w < threads; w++)
+				records[w] = futures.get(w).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Self-play interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Self-play worker failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Plays {@code n} games epsilon-greedily. Each game is recorded as its
+	 * number of moves followed by the cell of every move.
+	 *
+	 * @param worker the worker whose generator is used
+	 * @param first  the number of the first game, for the epsilon schedule
+	 * @param n      the number of games
+	 * @return the recorded games
+	 */
+	byte[] play(int worker, long first, int n) {
+		EpsilonGreedyPolicy explorer = new EpsilonGreedyPolicy(qTable, schedule, randoms[worker]);
+		byte[] record = new byte[n * 10];
+		int at = 0;
+		for (int i = 0; i < n; i++) {
+			explorer.setEpisode(first + i);
+			int mine = 0, theirs = 0;
+			int lengthAt = at++;
+			int moves = 0;
+			while (true) {
+				int cell = explorer.selectCell(normalize(mine, theirs), BitBoard.FULL & ~(mine | theirs));
+				record[at++] = (byte) cell;
+				moves++;
+				mine |= 1 << cell;
+				if (BitBoard.hasLine(mine) || (mine | theirs) == BitBoard.FULL)
+					break;
+				// the opponent's turn
+				int t = mine;
+				mine = theirs;
+				theirs = t;
+			}
+			record[lengthAt] = (byte) moves;
+		}
+
+		return record;
+	}
+
+	/**
+	 * Replays recorded games, updating the q-values of every move from the point
+	 * of view of the agent that made it.
+	 *
+	 * @param record games as recorded by {@link #play}
+	 */
+	void learn(byte[] record) {
+		int at = 0;
+		while (at < record.length) {
+			int moves = record[at++];
+			if (moves == 0)
+				break;
+
+			int mine = 0, theirs = 0;
+			for (int i = 0; i < moves; i++) {
+				int cell = record[at++];
+				int s = normalize(mine, theirs);
+				int after = mine | 1 << cell;
+				double target;
+				if (BitBoard.hasLine(after))
+					target = winReward;
+				else if ((after | theirs) == BitBoard.FULL)
+					target = drawReward;
+				else
+					target = -discount * qTable.maxQ(normalize(theirs, after), BitBoard.FULL & ~(after | theirs));
+
+				double q = qTable.get(s, cell);
+				qTable.set(s, cell, q + alpha * (target - q));
+
+				mine = theirs;
+				theirs = after;
+			}
+		}
+	}
+
+	public long getGamesPlayed() {
+		return gamesPlayed;
+	}
+
+	/**
+	 *
+	 * @return the greedy policy of a copy of the current table, able to play
+	 *         either side
+	 */
+	public Policy extractPolicy() {
+		return new SelfPlayPolicy(new QTable(qTable));
+	}
+
+	public static void main(String a[]) throws IllegalMoveException {
+		// Test method: train once, then play the two seats against each other.
+		SelfPlayTrainer trainer = new SelfPlayTrainer(0.5, 0.9, EpsilonSchedule.linear(1.0, 0.1, 150000),
+				Runtime.getRuntime().availableProcessors());
+		trainer.train(200000);
+
+		Policy p = trainer.extractPolicy();
+		Game g = new Game(new Agent(p), new Agent(p));
+		g.playOut();
+
+	}
+
+}
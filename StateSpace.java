@@ -0,0 +1,257 @@
+package ticTacToe;
+
+import java.util.Arrays;
+
+/**
+ * Every game position that can actually be reached in play, from an empty
+ * board with either X or O to move, enumerated once.
+ *
+ * Unlike scanning all 59049 game hashes and filtering with
+ * {@link Game#isValid()}, this never produces positions that cannot occur, such
+ * as boards where both players have three in a row or play went on after a
+ * win.
+ *
+ * Positions are numbered densely from 0, in layer order: all positions with no
+ * marks first, then those with one mark, and so on. The successors of every
+ * position are kept in compressed sparse rows: the successors of position
+ * {@code id} are {@code successor(e)} for {@code e} in
+ * {@code firstEdge(id) .. firstEdge(id + 1) - 1}, in cell order. Terminal
+ * positions have none.
+ *
+ * The state space is immutable and built once, on first use; see
+ * {@link #get()}.
+ *
+ */
+public final class StateSpace {
+
+	private static StateSpace instance;
+
+	/**
+	 * the game hash of every position, by id
+	 */
+	private final int[] hashes;
+
+	/**
+	 * the id of every game hash, or -1 if it cannot be reached
+	 */
+	private final int[] ids;
+
+	/**
+	 * layer {@code l}, the positions with {@code l} marks, takes ids
+	 * {@code layerStart[l] .. layerStart[l+1] - 1}
+	 */
+	private final int[] layerStart = new int[11];
+
+	/**
+	 * the game state of every position: {@link Game#ONGOING}, {@link Game#X_WON},
+	 * {@link Game#O_WON} or {@link Game#DRAW}
+	 */
+	private final byte[] states;
+
+	private final int[] edgeStart;
+	private final int[] successors;
+	private final byte[] edgeCells;
+
+	private StateSpace() {
+		int[] ids = new int[QTable.NUM_STATES];
+		Arrays.fill(ids, -1);
+		int[] hashes = new int[QTable.NUM_STATES];
+		byte[] states = new byte[QTable.NUM_STATES];
+		int n = 0;
+
+		// breadth first, one layer at a time, so ids come out in layer order
+		for (boolean xFirst : new boolean[] { true, false }) {
+			int hash = BitBoard.encode(0, 0, xFirst);
+			ids[hash] = n;
+			hashes[n++] = hash;
+		}
+		layerStart[0] = 0;
+		for (int layer = 0; layer < 10; layer++) {
+			layerStart[layer + 1] = n;
+			for (int id = layerStart[layer]; id < layerStart[layer + 1]; id++) {
+				int hash = hashes[id];
+				int xMask = BitBoard.xMaskOf(hash);
+				int oMask = BitBoard.oMaskOf(hash);
+				states[id] = (byte) BitBoard.evaluate(xMask, oMask);
+				if (states[id] != Game.ONGOING)
+					continue;
+
+				boolean xToMove = BitBoard.xToMoveOf(hash);
+				for (int free = BitBoard.FULL & ~(xMask | oMask); free != 0; free &= free - 1) {
+					int bit = free & -free;
+					int next = xToMove ? BitBoard.encode(xMask | bit, oMask, false)
+							: BitBoard.encode(xMask, oMask | bit, true);
+					if (ids[next] < 0) {
+						ids[next] = n;
+						hashes[n++] = next;
+					}
+				}
+			}
+		}
+
+		this.ids = ids;
+		this.hashes = Arrays.copyOf(hashes, n);
+		this.states = Arrays.copyOf(states, n);
+
+		// the successor lists, now that every position has its id
+		this.edgeStart = new int[n + 1];
+		int edges = 0;
+		for (int id = 0; id < n; id++)
+			if (this.states[id] == Game.ONGOING)
+				edges += 9 - Integer.bitCount(BitBoard.xMaskOf(this.hashes[id]) | BitBoard.oMaskOf(this.hashes[id]));
+		this.successors = new int[edges];
+		this.edgeCells = new byte[edges];
+
+		int e = 0;
+		for (int id = 0; id < n; id++) {
+			edgeStart[id] = e;
+			if (this.states[id] != Game.ONGOING)
+				continue;
+
+			int hash = this.hashes[id];
+			int xMask = BitBoard.xMaskOf(hash);
+			int oMask = BitBoard.oMaskOf(hash);
+			boolean xToMove = BitBoard.xToMoveOf(hash);
+			for (int free = BitBoard.FULL & ~(xMask | oMask); free != 0; free &= free - 1) {
+				int cell = Integer.numberOfTrailingZeros(free);
+				int next = xToMove ? BitBoard.encode(xMask | 1 << cell, oMask, false)
+						: BitBoard.encode(xMask, oMask | 1 << cell, true);
+				successors[e] = ids[next];
+				edgeCells[e++] = (byte) cell;
+			}
+		}
+		edgeStart[n] = e;
+	}
+
+	/**
+	 *
+	 * @return the state space, built on first use
+	 */
+	public static synchronized StateSpace get() {
+		if (instance == null)
+			instance = new StateSpace();
+
+		return instance;
+	}
+
+	/**
+	 *
+	 * @return the number of reachable positions
+	 */
+	public int size() {
+		return hashes.length;
+	}
+
+	/**
+	 *
+	 * @param hash a game hash, see {@link Game#hashCode}
+	 * @return the id of the position, or -1 if it cannot be reached
+	 */
+	public int id(int hash) {
+		return hash < 0 || hash >= ids.length ? -1 : ids[hash];
+	}
+
+	/**
+	 *
+	 * @param id
+	 * @return the game hash of position {@code id}
+	 */
+	public int hash(int id) {
+		return hashes[id];
+	}
+
+	/**
+	 *
+	 * @param marks the number of marks on the board, 0 to 9
+	 * @return the first id of the positions with {@code marks} marks
+	 */
+	public int layerStart(int marks) {
+		return layerStart[marks];
+	}
+
+	/**
+	 *
+	 * @param marks the number of marks on the board, 0 to 9
+	 * @return one past the last id of the positions with {@code marks} marks
+	 */
+	public int layerEnd(int marks) {
+		return layerStart[marks + 1];
+	}
+
+	/**
+	 *
+	 * @param id
+	 * @return the state of position {@code id}, e.g. {@link Game#ONGOING}
+	 */
+	public int state(int id) {
+		return states[id];
+	}
+
+	public boolean isTerminal(int id) {
+		return states[id] != Game.ONGOING;
+	}
+
+	/**
+	 *
+	 * @param id
+	 * @return the first successor edge of position {@code id}; its edges end at
+	 *         {@code firstEdge(id + 1)}
+	 */
+	public int firstEdge(int id) {
+		return edgeStart[id];
+	}
+
+	/**
+	 *
+	 * @param edge
+	 * @return the id of the position the edge leads to
+	 */
+	public int successor(int edge) {
+		return successors[edge];
+	}
+
+	/**
+	 *
+	 * @param edge
+	 * @return the cell {@code 3*x+y} played along the edge
+	 */
+	public int cell(int edge) {
+		return edgeCells[edge];
+	}
+
+	/**
+	 * Creates the game for a position. Games created here share their two
+	 * (policy-less) agents; see {@link Position#toGame()}.
+	 *
+	 * @param id
+	 * @return a new game in position {@code id}, with its state evaluated
+	 */
+	public Game game(int id) {
+		return position(id).toGame();
+	}
+
+	/**
+	 *
+	 * @param id
+	 * @return position {@code id}
+	 */
+	public Position position(int id) {
+		return Position.ofHash(hashes[id]);
+	}
+
+	public static void main(String[] args) {
+		long start = System.nanoTime();
+		StateSpace space = StateSpace.get();
+		double ms = (System.nanoTime() - start) / 1e6;
+
+		int terminal = 0;
+		for (int id = 0; id < space.size(); id++)
+			if (space.isTerminal(id))
+				terminal++;
+		System.out.println(String.format("%d reachable positions (%d terminal), %d moves, built in %.1fms",
+				space.size(), terminal, space.firstEdge(space.size()), ms));
+		for (int marks = 0; marks <= 9; marks++)
+			System.out.println(String.format("  %d marks: %d", marks, space.layerEnd(marks) - space.layerStart(marks)));
+	}
+
+}
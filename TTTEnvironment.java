@@ -21,6 +21,41 @@ public class TTTEnvironment {
 	 */
 	Game game;
 	
+	/**
+	 * The opponent, playing as 'O'. The same opponent is kept across {@link #reset()}s.
+	 */
+	Agent opponent;
+	
+	
+	/**
+	 * If set, X and O take turns to start, one game each, from the next {@link #reset()} on; in a game O starts, the
+	 * opponent's opening move is played by {@link #reset()}. Otherwise X always starts.
+	 */
+	boolean bothStarters=false;
+	
+	/**
+	 * 'X' or 'O', whoever started the current game
+	 */
+	char starter='X';
+	
+	/**
+	 * If set, every finished game is logged here, with {@link #transcriptName} as the X agent.
+	 */
+	TranscriptWriter transcript=null;
+	String transcriptName;
+	
+	/**
+	 * the cells played so far in the current game, for the transcript
+	 */
+	private final byte[] cells=new byte[9];
+	private int numMoves=0;
+	
+	/**
+	 * see {@link Metrics}
+	 */
+	static final Metrics.Counter STEPS=Metrics.counter("env.steps");
+	static final Metrics.Counter EPISODES=Metrics.counter("env.episodes");
+	
 	
 	double winReward=10.0;
 	double loseReward=-50.0;
@@ -34,16 +69,18 @@ public class TTTEnvironment {
 	 */
 	public TTTEnvironment()
 	{
-		game=new Game(new Agent(), new RandomAgent());
+		this(new RandomAgent());
 	}
 	
 	public TTTEnvironment(Agent opponent)
 	{
+		this.opponent=opponent;
 		game=new Game(new Agent(), opponent);
 	}
 	
 	public TTTEnvironment(Agent opponent, double winReward, double loseReward, double livingReward, double drawReward)
 	{
+		this.opponent=opponent;
 		game=new Game(new Agent(), opponent);
 		this.winReward=winReward;
 		this.loseReward=loseReward;
@@ -92,9 +129,11 @@ public class TTTEnvironment {
 			return null;
 		}
 		
+		STEPS.increment();
 		Game prev=this.game.clone();
 		
 		game.executeMove(m);
+		record(m);
 		
 		if (game.getState()==Game.X_WON)
 		{
@@ -113,6 +152,7 @@ public class TTTEnvironment {
 		
 		
 		game.executeMove(oMove);
+		record(oMove);
 		if (game.getState()==Game.O_WON)
 		{
 			return new Outcome(prev, m, this.loseReward, game);
@@ -130,6 +170,28 @@ public class TTTEnvironment {
 		
 	}
 	
+	/**
+	 * Logs every game started in this environment from now on to {@code transcript}.
+	 * @param transcript the transcript, or null to stop logging
+	 * @param agentName the name to log for the learning agent playing X
+	 */
+	public void setTranscript(TranscriptWriter transcript, String agentName)
+	{
+		this.transcript=transcript;
+		this.transcriptName=agentName;
+	}
+	
+	private void record(Move m)
+	{
+		if (transcript==null)
+			return;
+		
+		cells[numMoves++]=(byte)(m.x*3+m.y);
+		// a game that was already under way when logging started is not logged
+		if (game.isTerminal() && numMoves==Integer.bitCount(game.marks('X')|game.marks('O')))
+			transcript.append(starter, transcriptName, opponent.getClass().getSimpleName(), game.getState(), cells, numMoves);
+	}
+	
 	public boolean isTerminal()
 	{
 		return game.isTerminal();
@@ -137,11 +199,36 @@ public class TTTEnvironment {
 	
 	
 	/**
-	 * Resets current game state to a new game state (empty board)
+	 * Resets current game state to a new game state (empty board), keeping the same opponent. If O starts the new game
+	 * (see {@link #setBothStarters}), the opponent has played its opening move when this returns.
 	 */
 	public void reset()
 	{
-		this.game=new Game(new Agent(), new RandomAgent());
+		EPISODES.increment();
+		this.starter=bothStarters && starter=='X' ? 'O' : 'X';
+		this.game=new Game(new Agent(), opponent);
+		this.numMoves=0;
+		if (starter=='O')
+		{
+			game.reset(opponent);
+			Move oMove=opponent.getMove(game);
+			try {
+				game.executeMove(oMove);
+			} catch (IllegalMoveException e) {
+				throw new IllegalStateException("Illegal opening move "+oMove+" by the opponent", e);
+			}
+			record(oMove);
+		}
+	}
+	
+	/**
+	 * Whether X and O take turns to start games, so that an agent learning from this environment learns to play X
+	 * in games started by either player. By default X always starts.
+	 * @param bothStarters
+	 */
+	public void setBothStarters(boolean bothStarters)
+	{
+		this.bothStarters=bothStarters;
 	}
 	
 	
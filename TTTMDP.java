@@ -26,6 +26,17 @@ public class TTTMDP {
 	double livingReward=-1.00;
 	double drawReward=0.0;
 	
+	/**
+	 * How the opponent moves, or null if it moves uniformly at random.
+	 */
+	OpponentModel opponentModel=null;
+	
+	/**
+	 * see {@link Metrics}
+	 */
+	static final Metrics.Counter TRANSITION_CALLS=Metrics.counter("mdp.generateTransitions");
+	static final Metrics.Counter TRANSITIONS=Metrics.counter("mdp.transitions");
+	
 	public TTTMDP() {
 	
 		
@@ -39,6 +50,16 @@ public class TTTMDP {
 	}
 	
 	
+	/**
+	 * Models the opponent's moves with {@code model}, e.g. one learned from game transcripts with 
+	 * {@link TranscriptAnalytics}, instead of assuming it moves uniformly at random.
+	 * @param model the model, or null for a uniformly random opponent
+	 */
+	public void setOpponentModel(OpponentModel model)
+	{
+		this.opponentModel=model;
+	}
+	
 	/**
 	 * Generates a list of TransitionProb objects containing game outcomes (source game, move, reward, target game) tuples paired with their
 	 * probabilities. 
@@ -58,6 +79,7 @@ public class TTTMDP {
 			throw new IllegalStateException("Value Iteration Agent is playing O. This will lead to unexpected results. It shouldn't happen.");
 		}
 		
+		TRANSITION_CALLS.increment();
 		List<TransitionProb> result=new ArrayList<TransitionProb>();
 		//first simulate move m
 		
@@ -81,6 +103,7 @@ public class TTTMDP {
 			Outcome o=new Outcome(g, m, reward, intermediate);
 			TransitionProb transProb=new TransitionProb(o, 1.0);
 			result.add(transProb);
+			TRANSITIONS.increment();
 			return result;
 			
 		}//is it a draw?
@@ -90,18 +113,24 @@ public class TTTMDP {
 			Outcome o=new Outcome(g, m, reward, intermediate);
 			TransitionProb transProb=new TransitionProb(o, 1.0);
 			result.add(transProb);
+			TRANSITIONS.increment();
 			return result;
 			
 			
 		}
 		
 		
-		//If we are here equal chance that the opponent will move into the available places.
-		//we generate simulate all these, and associate them with equal probability
+		//If we are here equal chance that the opponent will move into the available places, unless there is an opponent model.
+		//we generate simulate all these, and associate them with equal probability (or the model's)
 		
 		List<Game> nextPossibleStates=intermediate.getAllSuccessorGames();
+		//successors come in cell order, the same order as the bits of the legal move mask
+		int legal=intermediate.legalMoveMask();
 		for(Game game: nextPossibleStates)
 		{
+			int cell=Integer.numberOfTrailingZeros(legal);
+			legal&=legal-1;
+			
 			double reward;	
 			if(game.getState()==Game.O_WON)
 			{
@@ -120,13 +149,14 @@ public class TTTMDP {
 			}
 			
 			Outcome o=new Outcome(g, m, reward, game);
-			double prob=(double)1/nextPossibleStates.size();
+			double prob=opponentModel==null ? (double)1/nextPossibleStates.size() : opponentModel.probability(intermediate, cell);
 			
 			TransitionProb transProb=new TransitionProb(o, prob);
 			result.add(transProb);
 			
 		}
 		
+		TRANSITIONS.add(result.size());
 		return result;
 		
 	}
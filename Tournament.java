@@ -0,0 +1,404 @@
+package ticTacToe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * A round-robin tournament: every pair of entrants plays in both seats, half of
+ * the games with each as X (X always starts), until the result of the pairing
+ * is known to within {@link #halfWidth} or {@link #maxGames} have been played.
+ *
+ * Pairings run in parallel on a {@link ForkJoinPool}. Every pairing plays with
+ * its own agents, made up front on the calling thread, so a seeded tournament
+ * (see {@link Rng}) gives the same results whatever the number of threads.
+ *
+ * Results are reported as win/draw/loss matrices with Wilson score intervals,
+ * and as Elo ratings fitted to all the games.
+ *
+ */
+public class Tournament {
+
+	/**
+	 * An agent taking part, and how to make more of it.
+	 */
+	public static class Entrant {
+		public final String name;
+		final Supplier<Agent> factory;
+
+		/**
+		 * true if its policy only plays X, so it is mirrored to play O (see
+		 * {@link MirroredPolicy})
+		 */
+		final boolean xOnly;
+
+		Entrant(String name, Supplier<Agent> factory, boolean xOnly) {
+			this.name = name;
+			this.factory = factory;
+			this.xOnly = xOnly;
+		}
+
+		Agent asX() {
+			return factory.get();
+		}
+
+		Agent asO() {
+			Agent a = factory.get();
+			return xOnly ? new Agent(new MirroredPolicy(a.getPolicy())) : a;
+		}
+	}
+
+	final List<Entrant> entrants = new ArrayList<Entrant>();
+
+	/**
+	 * the most games a pairing plays
+	 */
+	long maxGames = 100000;
+
+	/**
+	 * games are played in batches of this size (half in each seat) between
+	 * checks of the intervals
+	 */
+	int batchSize = 1000;
+
+	/**
+	 * a pairing stops once the intervals of its win, draw and loss rates are all
+	 * at most this far from their estimates
+	 */
+	double halfWidth = 0.01;
+
+	/**
+	 * the normal quantile of the intervals: 1.96 for 95%
+	 */
+	double z = 1.96;
+
+	/**
+	 * Adds an entrant.
+	 *
+	 * @param name    its name in the results
+	 * @param factory makes a new agent for each pairing and seat
+	 * @param xOnly   true if its policy can only play X
+	 */
+	public void add(String name, Supplier<Agent> factory, boolean xOnly) {
+		entrants.add(new Entrant(name, factory, xOnly));
+	}
+
+	public void setMaxGames(long maxGames) {
+		this.maxGames = maxGames;
+	}
+
+	/**
+	 *
+	 * @param halfWidth the interval half-width at which a pairing stops
+	 * @param z         the normal quantile of the intervals, e.g. 1.96 for 95%
+	 */
+	public void setPrecision(double halfWidth, double z) {
+		this.halfWidth = halfWidth;
+		this.z = z;
+	}
+
+	/**
+	 * The results of a tournament.
+	 */
+	public static class Result {
+		public final List<String> names;
+
+		/**
+		 * {@code counts[i][j]} holds the games won, drawn and lost by entrant
+		 * {@code i} against entrant {@code j}, in both seats
+		 */
+		public final long[][][] counts;
+
+		public final double[] elo;
+
+		public final double z;
+		public final double seconds;
+
+		Result(List<String> names, long[][][] counts, double z, double seconds) {
+			this.names = names;
+			this.counts = counts;
+			this.elo = elo(counts);
+			this.z = z;
+			this.seconds = seconds;
+		}
+
+		public long games(int i, int j) {
+			return counts[i][j][0] + counts[i][j][1] + counts[i][j][2];
+		}
+
+		/**
+		 *
+		 * @param i
+		 * @param j
+		 * @param outcome 0 for won, 1 for drawn, 2 for lost
+		 * @return the Wilson score interval {lower, upper} of the rate at which
+		 *         {@code i} has that outcome against {@code j}
+		 */
+		public double[] interval(int i, int j, int outcome) {
+			return wilson(counts[i][j][outcome], games(i, j), z);
+		}
+
+		/**
+		 *
+		 * @return the matrices and the ratings, as text
+		 */
+		public String report() {
+			StringBuilder sb = new StringBuilder();
+			int width = 10;
+			for (String n : names)
+				width = Math.max(width, n.length() + 1);
+
+			String[] titles = { "won", "drawn", "lost" };
+			for (int outcome = 0; outcome < 3; outcome++) {
+				sb.append(String.format("%% of games %s by row against column, with %.0f%% interval%n", titles[outcome],
+						100 * (1 - 2 * (1 - phi(z)))));
+				sb.append(String.format("%-" + width + "s", ""));
+				for (String n : names)
+					sb.append(String.format("%" + Math.max(width, 20) + "s", n));
+				sb.append(String.format("%n"));
+				for (int i = 0; i < names.size(); i++) {
+					sb.append(String.format("%-" + width + "s", names.get(i)));
+					for (int j = 0; j < names.size(); j++) {
+						String cell = "-";
+						if (games(i, j) > 0) {
+							double[] ci = interval(i, j, outcome);
+							cell = String.format("%.1f [%.1f,%.1f]", 100.0 * counts[i][j][outcome] / games(i, j),
+									100 * ci[0], 100 * ci[1]);
+						}
+						sb.append(String.format("%" + Math.max(width, 20) + "s", cell));
+					}
+					sb.append(String.format("%n"));
+				}
+				sb.append(String.format("%n"));
+			}
+
+			sb.append(String.format("Elo ratings (mean 1500)%n"));
+			Integer[] order = new Integer[names.size()];
+			for (int i = 0; i < order.length; i++)
+				order[i] = i;
+			Arrays.sort(order, (a, b) -> Double.compare(elo[b], elo[a]));
+			for (int i : order) {
+				long played = 0;
+				for (int j = 0; j < names.size(); j++)
+					played += games(i, j);
+				sb.append(String.format("  %-" + width + "s %6.0f  (%d games)%n", names.get(i), elo[i], played));
+			}
+			sb.append(String.format("played in %.2fs%n", seconds));
+
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * Plays every pairing.
+	 *
+	 * @param pool the pool the pairings are played in
+	 * @return the results
+	 */
+	public Result run(ForkJoinPool pool) {
+		int n = entrants.size();
+		long[][][] counts = new long[n][n][3];
+		List<Callable<long[]>> pairings = new ArrayList<Callable<long[]>>();
+		List<int[]> pairs = new ArrayList<int[]>();
+		for (int i = 0; i < n; i++)
+			for (int j = i + 1; j < n; j++) {
+				Entrant a = entrants.get(i);
+				Entrant b = entrants.get(j);
+				Game aFirst = new Game(a.asX(), b.asO());
+				Game bFirst = new Game(b.asX(), a.asO());
+				pairings.add(() -> playPairing(aFirst, bFirst));
+				pairs.add(new int[] { i, j });
+			}
+
+		long start = System.nanoTime();
+		List<Future<long[]>> results = pool.invokeAll(pairings);
+		try {
+			for (int p = 0; p < pairs.size(); p++) {
+				int i = pairs.get(p)[0];
+				int j = pairs.get(p)[1];
+				long[] wdl = results.get(p).get();
+				counts[i][j] = wdl;
+				counts[j][i] = new long[] { wdl[2], wdl[1], wdl[0] };
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Tournament interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Pairing failed", e.getCause());
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		List<String> names = new ArrayList<String>();
+		for (Entrant e : entrants)
+			names.add(e.name);
+		return new Result(names, counts, z, seconds);
+	}
+
+	/**
+	 * Plays one pairing, alternating seats, until its intervals are tight.
+	 *
+	 * @param aFirst the game in which the first entrant plays X
+	 * @param bFirst the game in which the second entrant plays X
+	 * @return the games won, drawn and lost by the first entrant
+	 */
+	private long[] playPairing(Game aFirst, Game bFirst) throws IllegalMoveException {
+		long[] wdl = new long[3];
+		long games = 0;
+		while (games < maxGames) {
+			for (int k = 0; k < batchSize && games < maxGames; k++, games++) {
+				Game g = k % 2 == 0 ? aFirst : bFirst;
+				g.reset(g.x);
+				int state = g.play(null);
+				if (state == Game.DRAW)
+					wdl[1]++;
+				else if ((state == Game.X_WON) == (g == aFirst))
+					wdl[0]++;
+				else
+					wdl[2]++;
+			}
+
+			boolean tight = true;
+			for (int outcome = 0; outcome < 3; outcome++) {
+				double[] ci = wilson(wdl[outcome], games, z);
+				double p = (double) wdl[outcome] / games;
+				tight &= Math.max(p - ci[0], ci[1] - p) <= halfWidth;
+			}
+			if (tight)
+				break;
+		}
+
+		return wdl;
+	}
+
+	/**
+	 * The Wilson score interval of a binomial proportion.
+	 *
+	 * @param k the number of successes
+	 * @param n the number of trials
+	 * @param z the normal quantile, e.g. 1.96 for 95%
+	 * @return {lower, upper}
+	 */
+	public static double[] wilson(long k, long n, double z) {
+		if (n == 0)
+			return new double[] { 0, 1 };
+
+		double p = (double) k / n;
+		double z2 = z * z;
+		double centre = (p + z2 / (2 * n)) / (1 + z2 / n);
+		double half = z / (1 + z2 / n) * Math.sqrt(p * (1 - p) / n + z2 / (4.0 * n * n));
+		return new double[] { Math.max(0, centre - half), Math.min(1, centre + half) };
+	}
+
+	/**
+	 * Fits Elo ratings to the results by maximum likelihood, counting a draw as
+	 * half a win. Every pairing that was played also counts one virtual draw, so
+	 * ratings stay finite when an entrant wins every game.
+	 *
+	 * @param counts games won, drawn and lost by row against column
+	 * @return the ratings, with mean 1500
+	 */
+	static double[] elo(long[][][] counts) {
+		int n = counts.length;
+		double[] r = new double[n];
+		double k = Math.log(10) / 400;
+		for (int iteration = 0; iteration < 1000; iteration++) {
+			double largest = 0;
+			for (int i = 0; i < n; i++) {
+				double score = 0, expected = 0, slope = 0;
+				for (int j = 0; j < n; j++) {
+					long games = counts[i][j][0] + counts[i][j][1] + counts[i][j][2];
+					if (i == j || games == 0)
+						continue;
+
+					double p = 1 / (1 + Math.pow(10, (r[j] - r[i]) / 400));
+					score += counts[i][j][0] + 0.5 * counts[i][j][1] + 0.5;
+					expected += (games + 1) * p;
+					slope += (games + 1) * p * (1 - p) * k;
+				}
+				if (slope == 0)
+					continue;
+
+				// a Newton step, limited so that early steps cannot overshoot far
+				double step = Math.max(-200, Math.min(200, (score - expected) / slope));
+				r[i] += step;
+				largest = Math.max(largest, Math.abs(step));
+			}
+			if (largest < 1e-6)
+				break;
+		}
+
+		double mean = 0;
+		for (double x : r)
+			mean += x / n;
+		for (int i = 0; i < n; i++)
+			r[i] += 1500 - mean;
+
+		return r;
+	}
+
+	/**
+	 * the standard normal distribution function, for labelling intervals
+	 */
+	private static double phi(double x) {
+		// Abramowitz and Stegun 7.1.26, accurate to about 1e-7
+		double t = 1 / (1 + 0.3275911 * Math.abs(x) / Math.sqrt(2));
+		double erf = 1 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741 + t * (-1.453152027 + t * 1.061405429))))
+				* Math.exp(-x * x / 2);
+		return x >= 0 ? (1 + erf) / 2 : (1 - erf) / 2;
+	}
+
+	/**
+	 * Runs a tournament between the built-in agents:
+	 * {@code [-games <max per pairing>] [-width <half-width>] [-threads <n>] [-seed <long>]}
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		long maxGames = 100000;
+		double width = 0.01;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "-games":
+				maxGames = Long.parseLong(args[i + 1]);
+				break;
+			case "-width":
+				width = Double.parseDouble(args[i + 1]);
+				break;
+			case "-threads":
+				threads = Integer.parseInt(args[i + 1]);
+				break;
+			case "-seed":
+				Rng.setSeed(Long.parseLong(args[i + 1]));
+				break;
+			default:
+				System.out.println("Unknown option " + args[i]);
+				return;
+			}
+		}
+
+		Tournament t = new Tournament();
+		t.setMaxGames(maxGames);
+		t.setPrecision(width, 1.96);
+		t.add("random", RandomAgent::new, false);
+		t.add("agg", AggressiveAgent::new, false);
+		t.add("def", DefensiveAgent::new, false);
+		t.add("rule", RuleAgent::new, false);
+		t.add("vi", MatchRunner.copiesOf(new ValueIterationAgent()), true);
+		t.add("pi", MatchRunner.copiesOf(new PolicyIterationAgent()), true);
+		t.add("ql", MatchRunner.copiesOf(new QLearningAgent()), true);
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			System.out.print(t.run(pool).report());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+}
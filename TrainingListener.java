@@ -0,0 +1,16 @@
+package ticTacToe;
+
+/**
+ * Receives the metrics of every check interval during training.
+ *
+ */
+public interface TrainingListener {
+
+	/**
+	 * Prints one compact line per interval to standard output.
+	 */
+	TrainingListener PRINT = m -> System.out.println(m);
+
+	void onInterval(TrainingMetrics metrics);
+
+}
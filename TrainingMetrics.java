@@ -0,0 +1,61 @@
+package ticTacToe;
+
+/**
+ * A summary of one check interval of training, as reported by a
+ * {@link ConvergenceMonitor} to its {@link TrainingListener}. Rates are over
+ * the episodes of the interval only.
+ *
+ */
+public class TrainingMetrics {
+
+	/**
+	 * the number of episodes trained so far, at the end of the interval
+	 */
+	public final long episodes;
+
+	public final double episodesPerSecond;
+
+	public final double winRate;
+	public final double drawRate;
+	public final double lossRate;
+
+	/**
+	 * the mean and max absolute change of a q-value per update
+	 */
+	public final double meanAbsDelta;
+	public final double maxAbsDelta;
+
+	/**
+	 * the number of states whose greedy move changed since the previous check
+	 */
+	public final int policyChanges;
+
+	/**
+	 * the fraction of states in which the greedy move is the reference policy's
+	 * move, or NaN if there is no reference policy
+	 */
+	public final double referenceAgreement;
+
+	public TrainingMetrics(long episodes, double episodesPerSecond, double winRate, double drawRate,
+			double lossRate, double meanAbsDelta, double maxAbsDelta, int policyChanges, double referenceAgreement) {
+		this.episodes = episodes;
+		this.episodesPerSecond = episodesPerSecond;
+		this.winRate = winRate;
+		this.drawRate = drawRate;
+		this.lossRate = lossRate;
+		this.meanAbsDelta = meanAbsDelta;
+		this.maxAbsDelta = maxAbsDelta;
+		this.policyChanges = policyChanges;
+		this.referenceAgreement = referenceAgreement;
+	}
+
+	public String toString() {
+		String result = String.format("ep=%d eps/s=%.0f win=%.3f draw=%.3f loss=%.3f mean|dQ|=%.2e max|dQ|=%.2e changed=%d",
+				episodes, episodesPerSecond, winRate, drawRate, lossRate, meanAbsDelta, maxAbsDelta, policyChanges);
+		if (!Double.isNaN(referenceAgreement))
+			result += String.format(" agree=%.3f", referenceAgreement);
+
+		return result;
+	}
+
+}
@@ -0,0 +1,25 @@
+package ticTacToe;
+
+/**
+ * Told how far training has got, e.g. to show progress while an agent trains in
+ * the background.
+ *
+ */
+public interface TrainingProgress {
+
+	/**
+	 * Prints one line per report to standard output, e.g.
+	 * {@code value iteration: 3/10}.
+	 */
+	TrainingProgress PRINT = (phase, done, total) -> System.out
+			.println(phase + ": " + done + (total < 0 ? "" : "/" + total));
+
+	/**
+	 * 
+	 * @param phase what is being trained, e.g. "value iteration"
+	 * @param done  the number of iterations or episodes done so far
+	 * @param total the number to do, or -1 if it is not known in advance
+	 */
+	void onProgress(String phase, long done, long total);
+
+}
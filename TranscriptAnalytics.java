@@ -0,0 +1,381 @@
+package ticTacToe;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Turns game transcripts (see {@link TranscriptWriter}) into per-state visit
+ * and move counts, win rates by opening, and per-agent outcome tables.
+ *
+ * The transcripts are memory-mapped and cut into chunks of whole blocks, which
+ * a {@link ForkJoinPool} decodes in parallel. Each task counts into primitive
+ * arrays indexed by game hash, and tasks are reduced pairwise by adding them
+ * up, so nothing per game is kept on the heap.
+ *
+ * The move counts can drive an {@link OpponentModel} for {@link TTTMDP}, and
+ * can be saved as a count table with {@link Counts#writeTable(Path)}:
+ *
+ * <pre>
+ * int  magic "TTTC"
+ * int  version
+ * int  number of states (59049)
+ * int  reserved
+ * long visits[59049]     times each game hash was reached
+ * long moves[59049 * 9]  times each move was played, at hash*9+cell
+ * </pre>
+ *
+ */
+public class TranscriptAnalytics {
+
+	static final int MAGIC = 0x54545443; // "TTTC"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 16;
+
+	/**
+	 * the number of blocks decoded by a task before it is worth splitting
+	 */
+	static final int CHUNK_BLOCKS = 64;
+
+	/**
+	 * the largest region mapped at once: a whole number of blocks below 2 GB
+	 */
+	static final long SEGMENT_BYTES = (Integer.MAX_VALUE / TranscriptWriter.BLOCK_BYTES)
+			* (long) TranscriptWriter.BLOCK_BYTES;
+
+	private TranscriptAnalytics() {
+	}
+
+	/**
+	 * Everything counted over a set of games.
+	 */
+	public static class Counts {
+
+		public long games = 0;
+		public long moves = 0;
+
+		/**
+		 * the number of games per result, indexed by {@link Game#X_WON},
+		 * {@link Game#O_WON} and {@link Game#DRAW}
+		 */
+		public final long[] results = new long[4];
+
+		/**
+		 * {@code openings[starter][cell][result]}: the results of the games in which
+		 * X (starter 0) or O (starter 1) opened in {@code cell}
+		 */
+		public final long[][][] openings = new long[2][9][4];
+
+		/**
+		 * the times each game hash was reached, the starting positions included
+		 */
+		public final long[] visits = new long[QTable.NUM_STATES];
+
+		/**
+		 * the times each move was played, at {@code hash*9+cell}
+		 */
+		public final long[] moveCounts = new long[QTable.NUM_STATES * 9];
+
+		/**
+		 * per agent name: won, drawn and lost as X, then as O
+		 */
+		public final Map<String, long[]> agents = new TreeMap<String, long[]>();
+
+		void add(Counts other) {
+			games += other.games;
+			moves += other.moves;
+			for (int r = 0; r < 4; r++)
+				results[r] += other.results[r];
+			for (int s = 0; s < 2; s++)
+				for (int c = 0; c < 9; c++)
+					for (int r = 0; r < 4; r++)
+						openings[s][c][r] += other.openings[s][c][r];
+			for (int i = 0; i < visits.length; i++)
+				visits[i] += other.visits[i];
+			for (int i = 0; i < moveCounts.length; i++)
+				moveCounts[i] += other.moveCounts[i];
+			for (Map.Entry<String, long[]> e : other.agents.entrySet())
+				addAgent(e.getKey(), e.getValue());
+		}
+
+		void addAgent(String name, long[] outcomes) {
+			long[] mine = agents.computeIfAbsent(name, n -> new long[6]);
+			for (int i = 0; i < 6; i++)
+				mine[i] += outcomes[i];
+		}
+
+		/**
+		 *
+		 * @param prior the pseudo-count added to every legal move
+		 * @return a model of the moves counted, shared with these counts
+		 */
+		public OpponentModel opponentModel(double prior) {
+			return new OpponentModel(moveCounts, prior);
+		}
+
+		/**
+		 * Writes the visit and move counts as a count table. The table is written
+		 * under a temporary name and renamed into place.
+		 *
+		 * @param file
+		 * @throws IOException
+		 */
+		public void writeTable(Path file) throws IOException {
+			Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+			try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0,
+						HEADER_BYTES + 8L * (visits.length + moveCounts.length));
+				buf.order(ByteOrder.LITTLE_ENDIAN);
+				buf.putInt(MAGIC).putInt(VERSION).putInt(QTable.NUM_STATES).putInt(0);
+				buf.asLongBuffer().put(visits).put(moveCounts);
+				buf.force();
+			}
+			Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		/**
+		 *
+		 * @return a compact, human readable summary
+		 */
+		public String report() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("games %d, moves %d (%.2f per game)%n", games, moves,
+					games == 0 ? 0.0 : (double) moves / games));
+			sb.append("results: ").append(rates(results)).append(String.format("%n"));
+
+			int reached = 0;
+			for (long v : visits)
+				if (v > 0)
+					reached++;
+			sb.append(String.format("distinct states reached: %d%n", reached));
+
+			sb.append(String.format("openings (starter cell: games, X won / O won / draw)%n"));
+			for (int s = 0; s < 2; s++)
+				for (int c = 0; c < 9; c++) {
+					long[] r = openings[s][c];
+					if (r[1] + r[2] + r[3] > 0)
+						sb.append(String.format("  %c (%d,%d): %d, %s%n", s == 0 ? 'X' : 'O', c / 3, c % 3,
+								r[1] + r[2] + r[3], rates(r)));
+				}
+
+			sb.append(String.format("agents (won / drawn / lost as X; as O)%n"));
+			for (Map.Entry<String, long[]> e : agents.entrySet()) {
+				long[] a = e.getValue();
+				sb.append(String.format("  %s: %d / %d / %d; %d / %d / %d%n", e.getKey(), a[0], a[1], a[2], a[3],
+						a[4], a[5]));
+			}
+
+			return sb.toString();
+		}
+
+		private static String rates(long[] r) {
+			double n = Math.max(1, r[Game.X_WON] + r[Game.O_WON] + r[Game.DRAW]);
+			return String.format("%.1f%% / %.1f%% / %.1f%%", 100 * r[Game.X_WON] / n, 100 * r[Game.O_WON] / n,
+					100 * r[Game.DRAW] / n);
+		}
+	}
+
+	/**
+	 * Reads the move counts of a count table written by
+	 * {@link Counts#writeTable(Path)}.
+	 *
+	 * @param file
+	 * @return the move counts, at {@code hash*9+cell}
+	 * @throws IOException if the file cannot be read or is not a count table
+	 */
+	public static long[] readMoveCounts(Path file) throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (ch.size() != HEADER_BYTES + 8L * QTable.NUM_STATES * 10)
+				throw new IOException(file + " is not a count table");
+
+			MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			buf.order(ByteOrder.LITTLE_ENDIAN);
+			if (buf.getInt(0) != MAGIC)
+				throw new IOException(file + " is not a count table");
+			if (buf.getInt(4) != VERSION)
+				throw new IOException(file + " has unsupported count table version " + buf.getInt(4));
+
+			long[] moves = new long[QTable.NUM_STATES * 9];
+			LongBuffer longs = buf.position(HEADER_BYTES).slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+			longs.position(QTable.NUM_STATES).get(moves);
+			return moves;
+		}
+	}
+
+	/**
+	 * Counts every game in {@code files}.
+	 *
+	 * @param files transcripts written by {@link TranscriptWriter}
+	 * @param pool  the pool the chunks are decoded in
+	 * @return the counts
+	 * @throws IOException if a file cannot be read or is not a transcript
+	 */
+	public static Counts analyse(List<Path> files, ForkJoinPool pool) throws IOException {
+		List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+		long chunkBytes = (long) CHUNK_BLOCKS * TranscriptWriter.BLOCK_BYTES;
+		for (Path file : files) {
+			try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+				long size = ch.size();
+				for (long at = 0; at < size; at += SEGMENT_BYTES) {
+					// the mappings stay valid after the channel is closed
+					MappedByteBuffer segment = ch.map(FileChannel.MapMode.READ_ONLY, at,
+							Math.min(SEGMENT_BYTES, size - at));
+					for (int from = 0; from < segment.capacity(); from += chunkBytes)
+						chunks.add(segment.slice(from, (int) Math.min(chunkBytes, segment.capacity() - from)));
+				}
+			}
+		}
+
+		if (chunks.isEmpty())
+			return new Counts();
+
+		// a handful of tasks per worker, each decoding many chunks into one set of counts
+		int grain = Math.max(1, chunks.size() / (4 * pool.getParallelism()));
+		try {
+			return pool.invoke(new CountTask(chunks, 0, chunks.size(), grain));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static class CountTask extends RecursiveTask<Counts> {
+
+		private static final long serialVersionUID = 1L;
+
+		final List<ByteBuffer> chunks;
+		final int from;
+		final int to;
+		final int grain;
+
+		CountTask(List<ByteBuffer> chunks, int from, int to, int grain) {
+			this.chunks = chunks;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+
+		protected Counts compute() {
+			if (to - from <= grain) {
+				Counts counts = new Counts();
+				for (int i = from; i < to; i++)
+					count(chunks.get(i), counts);
+				return counts;
+			}
+
+			int mid = (from + to) >>> 1;
+			CountTask left = new CountTask(chunks, from, mid, grain);
+			left.fork();
+			Counts right = new CountTask(chunks, mid, to, grain).compute();
+			Counts counts = left.join();
+			counts.add(right);
+			return counts;
+		}
+	}
+
+	/**
+	 * Counts the games in one chunk of whole blocks from one file.
+	 */
+	static void count(ByteBuffer chunk, Counts counts) {
+		// agent ids are local to the file, so outcomes are kept by id until the end
+		long[][] outcomes = new long[TranscriptWriter.MAX_AGENTS][];
+		TranscriptReader r = new TranscriptReader(chunk);
+		try {
+			while (r.next()) {
+				int result = r.getResult();
+				int n = r.getMoveCount();
+				boolean xToMove = r.getStarter() == 'X';
+				counts.games++;
+				counts.moves += n;
+				counts.results[result]++;
+				if (n > 0)
+					counts.openings[xToMove ? 0 : 1][r.getMove(0)][result]++;
+
+				int xMask = 0;
+				int oMask = 0;
+				int hash = BitBoard.encode(xMask, oMask, xToMove);
+				counts.visits[hash]++;
+				for (int i = 0; i < n; i++) {
+					int cell = r.getMove(i);
+					counts.moveCounts[hash * 9 + cell]++;
+					if (xToMove)
+						xMask |= 1 << cell;
+					else
+						oMask |= 1 << cell;
+					xToMove = !xToMove;
+					hash = BitBoard.encode(xMask, oMask, xToMove);
+					counts.visits[hash]++;
+				}
+
+				long[] x = outcomes[r.getXAgentId()];
+				if (x == null)
+					x = outcomes[r.getXAgentId()] = new long[6];
+				long[] o = outcomes[r.getOAgentId()];
+				if (o == null)
+					o = outcomes[r.getOAgentId()] = new long[6];
+				x[result == Game.X_WON ? 0 : result == Game.DRAW ? 1 : 2]++;
+				o[result == Game.O_WON ? 3 : result == Game.DRAW ? 4 : 5]++;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		for (int id = 0; id < outcomes.length; id++)
+			if (outcomes[id] != null)
+				counts.addAgent(r.getAgentName(id), outcomes[id]);
+	}
+
+	/**
+	 * Prints a report on the transcripts given, and optionally saves the count
+	 * table: {@code [-table <file>] [-threads <n>] <transcript>...}
+	 *
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		List<Path> files = new ArrayList<Path>();
+		Path table = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-table") && i + 1 < args.length)
+				table = Paths.get(args[++i]);
+			else if (args[i].equals("-threads") && i + 1 < args.length)
+				threads = Integer.parseInt(args[++i]);
+			else
+				files.add(Paths.get(args[i]));
+		}
+		if (files.isEmpty()) {
+			System.out.println("Usage: TranscriptAnalytics [-table <file>] [-threads <n>] <transcript>...");
+			return;
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		long start = System.nanoTime();
+		Counts counts = analyse(files, pool);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		pool.shutdown();
+
+		System.out.print(counts.report());
+		System.out.println(String.format("analysed in %.2fs (%.0f games/s)", seconds, counts.games / seconds));
+		if (table != null) {
+			counts.writeTable(table);
+			System.out.println("count table written to " + table);
+		}
+	}
+
+}
@@ -0,0 +1,183 @@
+package ticTacToe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the games in a transcript written by a {@link TranscriptWriter}, one
+ * at a time and in order. The reader is a cursor: {@link #next()} moves to the
+ * next game and the getters describe it, so reading allocates nothing per game.
+ *
+ * <pre>
+ * try (TranscriptReader r = new TranscriptReader(file)) {
+ * 	while (r.next())
+ * 		count[r.getResult()]++;
+ * }
+ * </pre>
+ *
+ */
+public class TranscriptReader implements AutoCloseable {
+
+	/**
+	 * the file being read, or null if reading {@link #source}
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * the blocks not read yet, if not reading a file
+	 */
+	private final ByteBuffer source;
+
+	private ByteBuffer block;
+
+	private final String[] names = new String[TranscriptWriter.MAX_AGENTS];
+
+	// the current game
+	private int header;
+	private int xId;
+	private int oId;
+	private final byte[] moves = new byte[9];
+
+	/**
+	 * Reads {@code file} block by block.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public TranscriptReader(Path file) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		this.source = null;
+		this.block = ByteBuffer.allocate(TranscriptWriter.BLOCK_BYTES);
+		block.limit(0);
+	}
+
+	/**
+	 * Reads whole blocks held in memory, e.g. part of a mapped transcript.
+	 *
+	 * @param blocks a buffer starting at a block boundary
+	 */
+	TranscriptReader(ByteBuffer blocks) {
+		this.channel = null;
+		this.source = blocks.duplicate();
+		this.block = ByteBuffer.allocate(0);
+	}
+
+	/**
+	 * Moves to the next game.
+	 *
+	 * @return false if there are no more games
+	 * @throws IOException if the file cannot be read or is not a transcript
+	 */
+	public boolean next() throws IOException {
+		while (true) {
+			if (!block.hasRemaining() && !nextBlock())
+				return false;
+
+			int b = block.get() & 0xFF;
+			if (b == 0) {
+				// padding: the rest of the block is empty
+				block.position(block.limit());
+			} else if (b == TranscriptWriter.AGENT_TAG) {
+				int id = block.get() & 0xFF;
+				byte[] name = new byte[block.get() & 0xFF];
+				block.get(name);
+				names[id] = new String(name, StandardCharsets.UTF_8);
+			} else {
+				header = b;
+				xId = block.get() & 0xFF;
+				oId = block.get() & 0xFF;
+				if (getResult() == Game.ONGOING || getMoveCount() > 9 || names[xId] == null || names[oId] == null)
+					throw new IOException("Not a valid transcript record: " + Integer.toHexString(b));
+				block.get(moves, 0, getMoveCount());
+				return true;
+			}
+		}
+	}
+
+	private boolean nextBlock() throws IOException {
+		if (channel != null) {
+			block.clear();
+			while (block.hasRemaining() && channel.read(block) >= 0)
+				;
+			block.flip();
+			return block.hasRemaining();
+		}
+
+		if (!source.hasRemaining())
+			return false;
+
+		int n = Math.min(TranscriptWriter.BLOCK_BYTES, source.remaining());
+		block = source.slice().limit(n);
+		source.position(source.position() + n);
+		return true;
+	}
+
+	/**
+	 *
+	 * @return 'X' or 'O', whoever played first
+	 */
+	public char getStarter() {
+		return (header & 0x80) == 0 ? 'X' : 'O';
+	}
+
+	/**
+	 *
+	 * @return {@link Game#X_WON}, {@link Game#O_WON} or {@link Game#DRAW}
+	 */
+	public int getResult() {
+		return header >> 4 & 3;
+	}
+
+	public int getMoveCount() {
+		return header & 0xF;
+	}
+
+	/**
+	 *
+	 * @param i
+	 * @return the cell index {@code 3*x+y} of move {@code i}
+	 */
+	public int getMove(int i) {
+		return moves[i];
+	}
+
+	/**
+	 *
+	 * @return the id of the X agent in this transcript, below
+	 *         {@link TranscriptWriter#MAX_AGENTS}
+	 */
+	public int getXAgentId() {
+		return xId;
+	}
+
+	public int getOAgentId() {
+		return oId;
+	}
+
+	public String getXAgent() {
+		return names[xId];
+	}
+
+	public String getOAgent() {
+		return names[oId];
+	}
+
+	/**
+	 *
+	 * @param id
+	 * @return the name of agent {@code id}, or null if not defined yet
+	 */
+	public String getAgentName(int id) {
+		return names[id];
+	}
+
+	public void close() throws IOException {
+		if (channel != null)
+			channel.close();
+	}
+
+}
@@ -0,0 +1,198 @@
+package ticTacToe;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Appends finished games to a compact binary transcript file, to be read back
+ * with a {@link TranscriptReader}.
+ *
+ * A transcript is a sequence of {@link #BLOCK_BYTES} blocks. Each block is
+ * filled in memory and written with a single channel write, and the unused end
+ * of a block is zero. A game takes one byte per move plus three:
+ *
+ * <pre>
+ * byte header: bit 7 who started (0 X, 1 O), bits 5-4 the result
+ *              ({@link Game#X_WON}, {@link Game#O_WON} or {@link Game#DRAW}),
+ *              bits 3-0 the number of moves
+ * byte id of the X agent
+ * byte id of the O agent
+ * byte cell index 3*x+y of every move, in order
+ * </pre>
+ *
+ * Agent ids are defined by {@link #AGENT_TAG} records ({@code 0xFF, id, length,
+ * UTF-8 name}). Every block starts with the definitions of all agents seen so
+ * far, so each block can be decoded on its own, e.g. by a parallel reader.
+ *
+ * Writing is synchronized, so several threads may log to one writer.
+ *
+ */
+public class TranscriptWriter implements AutoCloseable {
+
+	public static final int BLOCK_BYTES = 1 << 16;
+
+	/**
+	 * the first byte of an agent definition. Zero, the first byte of padding, is
+	 * never a valid game header either, since a game always has a result.
+	 */
+	static final int AGENT_TAG = 0xFF;
+
+	static final int MAX_AGENTS = 255;
+	static final int MAX_NAME_BYTES = 64;
+
+	private final FileChannel channel;
+
+	/**
+	 * the block being filled
+	 */
+	private final ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_BYTES);
+
+	/**
+	 * true if {@link #block} holds any games
+	 */
+	private boolean dirty = false;
+
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();
+	private final List<byte[]> names = new ArrayList<byte[]>();
+
+	private long games = 0;
+
+	/**
+	 * Opens {@code file} for appending, creating it if needed.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public TranscriptWriter(Path file) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+
+		// a file cut short, e.g. by a crash, is padded so that blocks stay aligned
+		long partial = channel.size() % BLOCK_BYTES;
+		if (partial != 0) {
+			ByteBuffer zeros = ByteBuffer.allocate((int) (BLOCK_BYTES - partial));
+			while (zeros.hasRemaining())
+				channel.write(zeros);
+		}
+	}
+
+	/**
+	 * Logs a finished game.
+	 *
+	 * @param starter  'X' or 'O', whoever played first
+	 * @param xAgent   the name of the X agent, e.g. its class name
+	 * @param oAgent   the name of the O agent
+	 * @param result   {@link Game#X_WON}, {@link Game#O_WON} or {@link Game#DRAW}
+	 * @param cells    the cell index {@code 3*x+y} of every move, in order
+	 * @param numMoves the number of moves in {@code cells}
+	 * @throws UncheckedIOException if a full block could not be written
+	 */
+	public synchronized void append(char starter, String xAgent, String oAgent, int result, byte[] cells,
+			int numMoves) {
+		if (starter != 'X' && starter != 'O')
+			throw new IllegalArgumentException("The starter should be either 'X' or 'O'");
+		if (result != Game.X_WON && result != Game.O_WON && result != Game.DRAW)
+			throw new IllegalArgumentException("Only finished games can be logged");
+		if (numMoves < 0 || numMoves > 9)
+			throw new IllegalArgumentException("A game has at most 9 moves");
+
+		int xId = idOf(xAgent);
+		int oId = idOf(oAgent);
+		if (block.remaining() < 3 + numMoves)
+			flushBlock();
+
+		block.put((byte) ((starter == 'O' ? 0x80 : 0) | result << 4 | numMoves));
+		block.put((byte) xId);
+		block.put((byte) oId);
+		block.put(cells, 0, numMoves);
+		dirty = true;
+		games++;
+	}
+
+	/**
+	 *
+	 * @return the number of games logged by this writer
+	 */
+	public synchronized long getGames() {
+		return games;
+	}
+
+	private int idOf(String agent) {
+		Integer id = ids.get(agent);
+		if (id != null)
+			return id;
+
+		byte[] name = agent.getBytes(StandardCharsets.UTF_8);
+		if (name.length > MAX_NAME_BYTES)
+			throw new IllegalArgumentException("Agent name too long: " + agent);
+		if (names.size() == MAX_AGENTS)
+			throw new IllegalStateException("A transcript can name at most " + MAX_AGENTS + " agents");
+
+		id = names.size();
+		names.add(name);
+		ids.put(agent, id);
+		if (block.position() == 0 || block.remaining() < 3 + name.length)
+			flushBlock(); // the next block starts with every definition, this one included
+		else
+			putName(id);
+		return id;
+	}
+
+	private void putName(int id) {
+		byte[] name = names.get(id);
+		block.put((byte) AGENT_TAG).put((byte) id).put((byte) name.length).put(name);
+	}
+
+	/**
+	 * Writes the current block, if it holds any games, and starts the next one.
+	 */
+	private void flushBlock() {
+		if (dirty) {
+			while (block.hasRemaining())
+				block.put((byte) 0);
+			block.flip();
+			try {
+				while (block.hasRemaining())
+					channel.write(block);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			dirty = false;
+		}
+
+		block.clear();
+		for (int id = 0; id < names.size(); id++)
+			putName(id);
+	}
+
+	/**
+	 * Writes the games logged so far. The rest of the current block is left
+	 * empty, so flushing often wastes space; {@link #close()} flushes anyway.
+	 *
+	 * @throws UncheckedIOException
+	 */
+	public synchronized void flush() {
+		flushBlock();
+	}
+
+	public synchronized void close() throws IOException {
+		try {
+			flushBlock();
+			channel.force(false);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			channel.close();
+		}
+	}
+
+}
@@ -0,0 +1,248 @@
+package ticTacToe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * A value function stored off-heap, in a file that any number of processes can
+ * map read-only and share through the page cache, instead of each solving the
+ * MDP again.
+ *
+ * Values are kept as one double for every game hash (see {@link Game#hashCode}),
+ * which is a dense id over all boards, or NaN for games without a value. The
+ * file layout (little-endian) is:
+ *
+ * <pre>
+ * int    magic "TTTV"
+ * int    version
+ * int    number of entries (59049)
+ * int    reserved
+ * double discount
+ * double win, lose, living and draw rewards of the MDP
+ * long   CRC32 of the values
+ * double values[59049]
+ * </pre>
+ *
+ * Files are written under a temporary name and renamed into place, like
+ * {@link PolicyFile}, so a reader never maps a partial file.
+ *
+ */
+public class ValueFile {
+
+	static final int MAGIC = 0x54545456; // "TTTV"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 64;
+
+	public final double discount;
+	public final double winReward;
+	public final double loseReward;
+	public final double livingReward;
+	public final double drawReward;
+
+	/**
+	 * the mapped values, indexed by game hash
+	 */
+	private final DoubleBuffer values;
+
+	private ValueFile(MappedByteBuffer buf) {
+		this.discount = buf.getDouble(16);
+		this.winReward = buf.getDouble(24);
+		this.loseReward = buf.getDouble(32);
+		this.livingReward = buf.getDouble(40);
+		this.drawReward = buf.getDouble(48);
+		this.values = buf.position(HEADER_BYTES).slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+	}
+
+	/**
+	 * Writes a value function and the parameters it was computed with.
+	 *
+	 * @param file
+	 * @param valueFunction the value of every game that has one
+	 * @param discount      the discount factor
+	 * @param mdp           the MDP whose rewards were used
+	 * @throws IOException
+	 */
+	public static void write(Path file, Map<Game, Double> valueFunction, double discount, TTTMDP mdp)
+			throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0,
+					HEADER_BYTES + 8L * QTable.NUM_STATES);
+			buf.order(ByteOrder.LITTLE_ENDIAN);
+			for (int hash = 0; hash < QTable.NUM_STATES; hash++)
+				buf.putDouble(HEADER_BYTES + 8 * hash, Double.NaN);
+			for (Map.Entry<Game, Double> e : valueFunction.entrySet())
+				buf.putDouble(HEADER_BYTES + 8 * e.getKey().hashCode(), e.getValue());
+
+			buf.position(HEADER_BYTES);
+			CRC32 crc = new CRC32();
+			crc.update(buf);
+
+			buf.putInt(0, MAGIC);
+			buf.putInt(4, VERSION);
+			buf.putInt(8, QTable.NUM_STATES);
+			buf.putInt(12, 0);
+			buf.putDouble(16, discount);
+			buf.putDouble(24, mdp.winReward);
+			buf.putDouble(32, mdp.loseReward);
+			buf.putDouble(40, mdp.livingReward);
+			buf.putDouble(48, mdp.drawReward);
+			buf.putLong(56, crc.getValue());
+			buf.force();
+		}
+		Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Maps a value file read-only, checking its header and checksum. Nothing is
+	 * copied onto the heap.
+	 *
+	 * @param file
+	 * @return the mapped value function
+	 * @throws IOException if the file cannot be read or is not a valid value
+	 *                     file
+	 */
+	public static ValueFile map(Path file) throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (ch.size() != HEADER_BYTES + 8L * QTable.NUM_STATES)
+				throw new IOException(file + " is not a value file");
+
+			MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			buf.order(ByteOrder.LITTLE_ENDIAN);
+			if (buf.getInt(0) != MAGIC)
+				throw new IOException(file + " is not a value file");
+			if (buf.getInt(4) != VERSION)
+				throw new IOException(file + " has unsupported value file version " + buf.getInt(4));
+			if (buf.getInt(8) != QTable.NUM_STATES)
+				throw new IOException(file + " does not hold a value for every game hash");
+
+			ByteBuffer body = buf.duplicate().position(HEADER_BYTES);
+			CRC32 crc = new CRC32();
+			crc.update(body);
+			if (crc.getValue() != buf.getLong(56))
+				throw new IOException(file + " is corrupt: checksum mismatch");
+
+			// the mapping stays valid after the channel is closed
+			return new ValueFile(buf);
+		}
+	}
+
+	/**
+	 *
+	 * @param discount
+	 * @param mdp
+	 * @return true if these values were computed with this discount factor and
+	 *         the rewards of {@code mdp}
+	 */
+	public boolean matches(double discount, TTTMDP mdp) {
+		return this.discount == discount && winReward == mdp.winReward && loseReward == mdp.loseReward
+				&& livingReward == mdp.livingReward && drawReward == mdp.drawReward;
+	}
+
+	/**
+	 *
+	 * @return an MDP with the rewards these values were computed with
+	 */
+	public TTTMDP mdp() {
+		return new TTTMDP(winReward, loseReward, livingReward, drawReward);
+	}
+
+	/**
+	 *
+	 * @param hash a game hash
+	 * @return the value of the game, or NaN if it has none
+	 */
+	public double getValue(int hash) {
+		return values.get(hash);
+	}
+
+	/**
+	 *
+	 * @param g
+	 * @return the value of {@code g}, or NaN if it has none
+	 */
+	public double getValue(Game g) {
+		return values.get(g.hashCode());
+	}
+
+	/**
+	 * A read-only {@link Map} view of the mapped values, for code written against
+	 * {@link ValueIterationAgent#valueFunction}. Lookups read the mapping
+	 * directly; iterating creates a {@link Game} per entry.
+	 *
+	 * @return the view
+	 */
+	public Map<Game, Double> asMap() {
+		return new AbstractMap<Game, Double>() {
+
+			public Double get(Object key) {
+				if (!(key instanceof Game))
+					return null;
+
+				double v = values.get(key.hashCode());
+				return Double.isNaN(v) ? null : v;
+			}
+
+			public boolean containsKey(Object key) {
+				return get(key) != null;
+			}
+
+			public Set<Map.Entry<Game, Double>> entrySet() {
+				return new AbstractSet<Map.Entry<Game, Double>>() {
+
+					public int size() {
+						int n = 0;
+						for (int hash = 0; hash < QTable.NUM_STATES; hash++)
+							if (!Double.isNaN(values.get(hash)))
+								n++;
+						return n;
+					}
+
+					public Iterator<Map.Entry<Game, Double>> iterator() {
+						return new Iterator<Map.Entry<Game, Double>>() {
+							int next = advance(0);
+
+							int advance(int from) {
+								while (from < QTable.NUM_STATES && Double.isNaN(values.get(from)))
+									from++;
+								return from;
+							}
+
+							public boolean hasNext() {
+								return next < QTable.NUM_STATES;
+							}
+
+							public Map.Entry<Game, Double> next() {
+								if (!hasNext())
+									throw new NoSuchElementException();
+
+								Game g = Game.inverseHash(next);
+								g.evaluateGameState();
+								Map.Entry<Game, Double> e = new AbstractMap.SimpleImmutableEntry<>(g, values.get(next));
+								next = advance(next + 1);
+								return e;
+							}
+						};
+					}
+				};
+			}
+		};
+	}
+
+}
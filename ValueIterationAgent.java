@@ -1,5 +1,7 @@
 package ticTacToe;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,14 +41,52 @@ public class ValueIterationAgent extends Agent {
 	int k = 10;
 
 	/**
-	 * This constructor trains the agent offline first and sets its policy
+	 * if set, told how far training has got
+	 */
+	TrainingProgress progress = null;
+
+	/**
+	 * see {@link Metrics}
+	 */
+	static final Metrics.Timer TRAIN = Metrics.timer("vi.train");
+	static final Metrics.Counter SWEEPS = Metrics.counter("vi.sweeps");
+	static final Metrics.Counter BACKUPS = Metrics.counter("vi.backups");
+
+	/**
+	 * This constructor shares its policy through the {@link ModelRegistry} with
+	 * every agent made with the same parameters: the policy is taken from the
+	 * registry, else from the {@link PolicyCache}, and otherwise the agent trains
+	 * offline first and caches its policy. Note that unless this agent trained,
+	 * {@link #valueFunction} is left empty; use
+	 * {@link #ValueIterationAgent(double)} to always train.
 	 */
 	public ValueIterationAgent() {
 		super();
 		mdp = new TTTMDP();
 		this.discount = 0.9;
-		initValues();
-		train();
+		super.policy = ModelRegistry.getOrTrain(cacheFile(), () -> {
+			initValues();
+			train();
+			return policy;
+		});
+	}
+
+	/**
+	 * 
+	 * @return the {@link PolicyCache} file for a policy trained with this agent's
+	 *         parameters
+	 */
+	public Path cacheFile() {
+		return PolicyCache.fileFor("vi", discount, mdp.winReward, mdp.loseReward, mdp.livingReward, mdp.drawReward, k);
+	}
+
+	/**
+	 * Reports progress to {@code progress} while training, once per iteration.
+	 * 
+	 * @param progress
+	 */
+	public void setTrainingProgress(TrainingProgress progress) {
+		this.progress = progress;
 	}
 
 	/**
@@ -59,6 +99,51 @@ public class ValueIterationAgent extends Agent {
 
 	}
 
+	/**
+	 * An agent that plays by the values in a {@link ValueFile}, e.g. one solved
+	 * and exported by another process. The discount factor and rewards are taken
+	 * from the file. {@link #valueFunction} becomes a read-only view of the
+	 * mapped file, so nothing is copied or recomputed; use
+	 * {@link #importValues(Path)} instead to iterate further.
+	 * 
+	 * @param values
+	 */
+	public ValueIterationAgent(ValueFile values) {
+		this.discount = values.discount;
+		this.mdp = values.mdp();
+		this.valueFunction = values.asMap();
+		super.policy = extractPolicy();
+	}
+
+	/**
+	 * Writes {@link #valueFunction} to a {@link ValueFile}, which other processes
+	 * can map with {@link ValueFile#map(Path)}.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	public void exportValues(Path file) throws IOException {
+		ValueFile.write(file, valueFunction, discount, mdp);
+	}
+
+	/**
+	 * Replaces {@link #valueFunction} with a copy of the values in {@code file}
+	 * and extracts the policy from them.
+	 * 
+	 * @param file a {@link ValueFile} computed with this agent's discount factor
+	 *             and rewards
+	 * @throws IOException if the file cannot be read, or was computed with other
+	 *                     parameters
+	 */
+	public void importValues(Path file) throws IOException {
+		ValueFile values = ValueFile.map(file);
+		if (!values.matches(discount, mdp))
+			throw new IOException(file + " was computed with a different discount factor or rewards");
+
+		this.valueFunction = new HashMap<Game, Double>(values.asMap());
+		super.policy = extractPolicy();
+	}
+
 	public ValueIterationAgent(double discountFactor) {
 
 		this.discount = discountFactor;
@@ -102,6 +187,11 @@ public class ValueIterationAgent extends Agent {
 		Map<Game, Double> iteratedVals = new HashMap<>(); // creating a Hashmap to store each game state's value
 
 		for (int i = 0; i < k; i++) { // for all k iterations get the game states
+			FlightEvents.ValueIterationSweep sweep = new FlightEvents.ValueIterationSweep();
+			sweep.begin();
+			boolean measure = sweep.isEnabled(); // the residual costs a lookup per state
+			double residual = 0.0;
+
 			for (Game g : valueFunction.keySet()) {
 				double maxVal = Double.NEGATIVE_INFINITY; // initialize maximum move value to negative infinity
 
@@ -125,6 +215,9 @@ public class ValueIterationAgent extends Agent {
 					}
 				}
 
+				if (measure)
+					residual = Math.max(residual, Math.abs((g.isTerminal() ? 0.0 : maxVal) - valueFunction.get(g)));
+
 				if (!g.isTerminal()) { // updating the value to the hashmap
 					iteratedVals.put(g, maxVal);
 				} else {
@@ -134,6 +227,16 @@ public class ValueIterationAgent extends Agent {
 			}
 
 			valueFunction.putAll(iteratedVals);
+			SWEEPS.increment();
+			BACKUPS.add(iteratedVals.size());
+			if (sweep.shouldCommit()) {
+				sweep.sweep = i + 1;
+				sweep.states = iteratedVals.size();
+				sweep.residual = residual;
+				sweep.commit();
+			}
+			if (progress != null)
+				progress.onProgress("value iteration", i + 1, k);
 		}
 	}
 	/*
@@ -189,6 +292,15 @@ public class ValueIterationAgent extends Agent {
 	 * {@link ValueIterationAgent#iterate}.
 	 */
 	public void train() {
+		Metrics.Phase phase = TRAIN.start();
+		try {
+			trainUntimed();
+		} finally {
+			phase.close();
+		}
+	}
+
+	private void trainUntimed() {
 		/**
 		 * First run value iteration
 		 */